@@ -0,0 +1,199 @@
+package com.julienviet.retrofit.vertx.benchmarks;
+
+import com.julienviet.retrofit.vertx.VertxCallFactory;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpVersion;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Okio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+import retrofit2.http.Query;
+import rx.Single;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link VertxCallFactory} with the {@link OkHttpClient} driving the same Retrofit service against
+ * a local Vert.x server.
+ *
+ * Run with {@code -prof gc} to report the allocation rate, the sample mode reports the latency percentiles.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientBenchmark {
+
+  private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+  public interface Service {
+
+    @GET("/body")
+    Call<ResponseBody> get(@Query("size") int size);
+
+    @GET("/body")
+    Single<ResponseBody> getSingle(@Query("size") int size);
+
+    @POST("/body")
+    Call<ResponseBody> post(@Body RequestBody body);
+
+  }
+
+  @Param({"vertx", "okhttp"})
+  public String client;
+
+  @Param({"HTTP_1_1", "HTTP_2"})
+  public String protocol;
+
+  @Param({"128", "65536"})
+  public int bodySize;
+
+  private Vertx vertx;
+  private VertxCallFactory vertxCallFactory;
+  private OkHttpClient okHttpClient;
+  private Service service;
+  private byte[] payload;
+
+  @Setup
+  public void setup() throws Exception {
+    vertx = Vertx.vertx();
+    Buffer body = Buffer.buffer(new byte[bodySize]);
+    payload = body.getBytes();
+    HttpServer server = vertx.createHttpServer().requestHandler(req -> handle(req, body));
+    CompletableFuture<Integer> listen = new CompletableFuture<>();
+    server.listen(0, "localhost", ar -> {
+      if (ar.succeeded()) {
+        listen.complete(ar.result().actualPort());
+      } else {
+        listen.completeExceptionally(ar.cause());
+      }
+    });
+    int port = listen.get(10, TimeUnit.SECONDS);
+    boolean http2 = protocol.equals("HTTP_2");
+    okhttp3.Call.Factory callFactory;
+    switch (client) {
+      case "vertx":
+        HttpClientOptions options = new HttpClientOptions().setKeepAlive(true).setMaxPoolSize(16);
+        if (http2) {
+          options.setProtocolVersion(HttpVersion.HTTP_2).setHttp2ClearTextUpgrade(false);
+        }
+        vertxCallFactory = new VertxCallFactory(vertx, vertx.createHttpClient(options));
+        callFactory = vertxCallFactory;
+        break;
+      case "okhttp":
+        okHttpClient = new OkHttpClient.Builder()
+          .protocols(Collections.singletonList(http2 ? Protocol.H2_PRIOR_KNOWLEDGE : Protocol.HTTP_1_1))
+          .build();
+        okHttpClient.dispatcher().setMaxRequestsPerHost(16);
+        callFactory = okHttpClient;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown client " + client);
+    }
+    service = new Retrofit.Builder()
+      .baseUrl("http://localhost:" + port + "/")
+      .callFactory(callFactory)
+      .addCallAdapterFactory(RxJavaCallAdapterFactory.create())
+      .build()
+      .create(Service.class);
+  }
+
+  private static void handle(HttpServerRequest req, Buffer body) {
+    switch (req.method()) {
+      case GET:
+        req.response().end(body);
+        break;
+      case POST:
+        req.bodyHandler(buff -> req.response().end());
+        break;
+      default:
+        req.response().setStatusCode(405).end();
+        break;
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    if (okHttpClient != null) {
+      okHttpClient.dispatcher().executorService().shutdown();
+      okHttpClient.connectionPool().evictAll();
+    }
+    CompletableFuture<Void> close = new CompletableFuture<>();
+    vertx.close(ar -> close.complete(null));
+    close.get(10, TimeUnit.SECONDS);
+  }
+
+  @Benchmark
+  public long getExecute() throws IOException {
+    return consume(service.get(bodySize).execute().body());
+  }
+
+  @Benchmark
+  public long getEnqueue() throws Exception {
+    CompletableFuture<Long> result = new CompletableFuture<>();
+    service.get(bodySize).enqueue(new Callback<ResponseBody>() {
+      @Override
+      public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+        try {
+          result.complete(consume(response.body()));
+        } catch (IOException e) {
+          result.completeExceptionally(e);
+        }
+      }
+      @Override
+      public void onFailure(Call<ResponseBody> call, Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    return result.get();
+  }
+
+  @Benchmark
+  public long getRxJava() throws IOException {
+    return consume(service.getSingle(bodySize).toBlocking().value());
+  }
+
+  @Benchmark
+  public long postExecute() throws IOException {
+    return consume(service.post(RequestBody.create(OCTET_STREAM, payload)).execute().body());
+  }
+
+  private static long consume(ResponseBody body) throws IOException {
+    try (ResponseBody b = body) {
+      return b.source().readAll(Okio.blackhole());
+    }
+  }
+}
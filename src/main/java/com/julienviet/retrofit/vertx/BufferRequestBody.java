@@ -0,0 +1,67 @@
+package com.julienviet.retrofit.vertx;
+
+import io.vertx.core.buffer.Buffer;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A request body sending a Vert.x {@link Buffer}.
+ *
+ * The {@link VertxCallFactory} writes the buffer to the request as is, without copying it to okio buffers. Other
+ * call factories, or a compressed request, write the buffer with {@link #writeTo}.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class BufferRequestBody extends RequestBody {
+
+  /**
+   * Create a body sending a {@code buffer}, the buffer must not be modified after.
+   *
+   * @param contentType the content type
+   * @param buffer the buffer
+   * @return the body
+   */
+  public static BufferRequestBody create(MediaType contentType, Buffer buffer) {
+    if (buffer == null) {
+      throw new NullPointerException("buffer == null");
+    }
+    return new BufferRequestBody(contentType, buffer);
+  }
+
+  private final MediaType contentType;
+  private final Buffer buffer;
+
+  private BufferRequestBody(MediaType contentType, Buffer buffer) {
+    this.contentType = contentType;
+    this.buffer = buffer;
+  }
+
+  /**
+   * @return the buffer
+   */
+  public Buffer buffer() {
+    return buffer;
+  }
+
+  @Override
+  public MediaType contentType() {
+    return contentType;
+  }
+
+  @Override
+  public long contentLength() {
+    return buffer.length();
+  }
+
+  @Override
+  public void writeTo(BufferedSink sink) throws IOException {
+    ByteBuffer src = buffer.getByteBuf().nioBuffer();
+    while (src.hasRemaining()) {
+      sink.write(src);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.julienviet.retrofit.vertx;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+import java.io.IOException;
+
+/**
+ * A response body reading a Vert.x {@link Buffer} collected in memory, the source reads the underlying Netty buffer
+ * as it is consumed instead of copying the whole body to a byte array first.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class BufferResponseBody extends ResponseBody {
+
+  private final MediaType contentType;
+  private final Buffer buffer;
+  private BufferedSource source;
+
+  BufferResponseBody(MediaType contentType, Buffer buffer) {
+    this.contentType = contentType;
+    this.buffer = buffer;
+  }
+
+  /**
+   * @return the buffer of the body
+   */
+  Buffer buffer() {
+    return buffer;
+  }
+
+  @Override
+  public MediaType contentType() {
+    return contentType;
+  }
+
+  @Override
+  public long contentLength() {
+    return buffer.length();
+  }
+
+  @Override
+  public synchronized BufferedSource source() {
+    if (source == null) {
+      source = Okio.buffer(new ByteBufSource(buffer.getByteBuf()));
+    }
+    return source;
+  }
+
+  /**
+   * Reads a Netty buffer, each {@code ByteBufSource} has its own reader index.
+   */
+  private static class ByteBufSource implements Source {
+
+    private final ByteBuf buf;
+    private boolean closed;
+
+    ByteBufSource(ByteBuf buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public long read(okio.Buffer sink, long byteCount) throws IOException {
+      if (byteCount < 0) {
+        throw new IllegalArgumentException("byteCount < 0: " + byteCount);
+      }
+      if (closed) {
+        throw new IOException("closed");
+      }
+      if (!buf.isReadable()) {
+        return -1;
+      }
+      int amount = (int) Math.min(byteCount, buf.readableBytes());
+      sink.write(buf.nioBuffer(buf.readerIndex(), amount));
+      buf.skipBytes(amount);
+      return amount;
+    }
+
+    @Override
+    public Timeout timeout() {
+      return Timeout.NONE;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,329 @@
+package com.julienviet.retrofit.vertx;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import okhttp3.CacheControl;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cached response, the body is a read-only buffer either on the heap or mapped from a disk file.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+final class CacheEntry {
+
+  private static final int MAGIC = 0xCAC4E001;
+
+  final String url;
+  final Headers varyHeaders;
+  final int code;
+  final String message;
+  final Headers headers;
+  final long sentRequestMillis;
+  final long receivedResponseMillis;
+  final ByteBuffer body;
+
+  CacheEntry(String url, Headers varyHeaders, int code, String message, Headers headers, long sentRequestMillis, long receivedResponseMillis, ByteBuffer body) {
+    this.url = url;
+    this.varyHeaders = varyHeaders;
+    this.code = code;
+    this.message = message;
+    this.headers = headers;
+    this.sentRequestMillis = sentRequestMillis;
+    this.receivedResponseMillis = receivedResponseMillis;
+    this.body = body.asReadOnlyBuffer();
+  }
+
+  /**
+   * @return the approximate heap size of the entry
+   */
+  long size() {
+    return body.remaining() + headers.byteCount() + varyHeaders.byteCount() + url.length() + message.length();
+  }
+
+  /**
+   * @return whether the entry can be used for the {@code request}, taking the {@code Vary} header in account
+   */
+  boolean matches(Request request) {
+    if (!url.equals(request.url().toString()) || !request.method().equals("GET")) {
+      return false;
+    }
+    for (String field : varyFields(headers)) {
+      if (!Objects.equals(varyHeaders.values(field), request.headers(field))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the response for the {@code request}, with a fresh body source reading the body buffer without copying it
+   */
+  Response response(Request request) {
+    Buffer buffer = Buffer.buffer(Unpooled.wrappedBuffer(body.duplicate()));
+    String contentType = headers.get("Content-Type");
+    return new Response.Builder()
+      .protocol(Protocol.HTTP_1_1)
+      .request(request)
+      .code(code)
+      .message(message)
+      .headers(headers)
+      .sentRequestAtMillis(sentRequestMillis)
+      .receivedResponseAtMillis(receivedResponseMillis)
+      .body(new BufferResponseBody(contentType != null ? MediaType.parse(contentType) : null, buffer))
+      .build();
+  }
+
+  /**
+   * Update the entry with the headers of a {@code 304} response, the body is retained.
+   *
+   * @return the updated entry
+   */
+  CacheEntry update(Headers networkHeaders, long sentRequestMillis, long receivedResponseMillis) {
+    Headers.Builder builder = new Headers.Builder();
+    for (int i = 0;i < headers.size();i++) {
+      String name = headers.name(i);
+      String value = headers.value(i);
+      if ("Warning".equalsIgnoreCase(name) && value.startsWith("1")) {
+        continue;
+      }
+      if (isContentSpecificHeader(name) || networkHeaders.get(name) == null) {
+        builder.add(name, value);
+      }
+    }
+    for (int i = 0;i < networkHeaders.size();i++) {
+      String name = networkHeaders.name(i);
+      if (!isContentSpecificHeader(name)) {
+        builder.add(name, networkHeaders.value(i));
+      }
+    }
+    return new CacheEntry(url, varyHeaders, code, message, builder.build(), sentRequestMillis, receivedResponseMillis, body);
+  }
+
+  /**
+   * @return the current age of the response as defined by RFC 7234
+   */
+  long ageMillis(long nowMillis) {
+    Date servedDate = headers.getDate("Date");
+    long apparentReceivedAge = servedDate != null ? Math.max(0, receivedResponseMillis - servedDate.getTime()) : 0;
+    long receivedAge = apparentReceivedAge;
+    String age = headers.get("Age");
+    if (age != null) {
+      receivedAge = Math.max(receivedAge, TimeUnit.SECONDS.toMillis(parseSeconds(age, 0)));
+    }
+    long responseDuration = receivedResponseMillis - sentRequestMillis;
+    long residentDuration = nowMillis - receivedResponseMillis;
+    return receivedAge + responseDuration + residentDuration;
+  }
+
+  /**
+   * @return the freshness lifetime of the response, from {@code max-age}, {@code Expires} or
+   *         the {@code Last-Modified} heuristic
+   */
+  long freshnessLifetimeMillis() {
+    CacheControl cacheControl = CacheControl.parse(headers);
+    if (cacheControl.maxAgeSeconds() != -1) {
+      return TimeUnit.SECONDS.toMillis(cacheControl.maxAgeSeconds());
+    }
+    Date servedDate = headers.getDate("Date");
+    Date expires = headers.getDate("Expires");
+    if (expires != null) {
+      long servedMillis = servedDate != null ? servedDate.getTime() : receivedResponseMillis;
+      return Math.max(0, expires.getTime() - servedMillis);
+    }
+    Date lastModified = headers.getDate("Last-Modified");
+    if (lastModified != null && !url.contains("?")) {
+      long servedMillis = servedDate != null ? servedDate.getTime() : sentRequestMillis;
+      return Math.max(0, (servedMillis - lastModified.getTime()) / 10);
+    }
+    return 0;
+  }
+
+  /**
+   * @return the {@code stale-while-revalidate} window of the response
+   */
+  long staleWhileRevalidateMillis() {
+    for (String value : headers.values("Cache-Control")) {
+      for (String directive : value.split(",")) {
+        directive = directive.trim();
+        if (directive.regionMatches(true, 0, "stale-while-revalidate=", 0, 23)) {
+          return TimeUnit.SECONDS.toMillis(parseSeconds(directive.substring(23), 0));
+        }
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Encode the entry in a buffer, the inverse of {@link #decode(ByteBuffer)}.
+   */
+  ByteBuffer encode() {
+    byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+    byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+    byte[][] headersBytes = encode(headers);
+    byte[][] varyBytes = encode(varyHeaders);
+    int size = 4 + 4 + urlBytes.length + 4 + 4 + messageBytes.length + 8 + 8 + size(headersBytes) + size(varyBytes) + 4 + body.remaining();
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.putInt(MAGIC);
+    put(buffer, urlBytes);
+    buffer.putInt(code);
+    put(buffer, messageBytes);
+    buffer.putLong(sentRequestMillis);
+    buffer.putLong(receivedResponseMillis);
+    put(buffer, headersBytes);
+    put(buffer, varyBytes);
+    buffer.putInt(body.remaining());
+    buffer.put(body.duplicate());
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Decode an entry, the body of the entry is a slice of the {@code buffer}.
+   *
+   * @throws IOException when the buffer does not contain a valid entry
+   */
+  static CacheEntry decode(ByteBuffer buffer) throws IOException {
+    try {
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Invalid cache entry");
+      }
+      String url = getString(buffer);
+      int code = buffer.getInt();
+      String message = getString(buffer);
+      long sentRequestMillis = buffer.getLong();
+      long receivedResponseMillis = buffer.getLong();
+      Headers headers = getHeaders(buffer);
+      Headers varyHeaders = getHeaders(buffer);
+      int len = buffer.getInt();
+      ByteBuffer body = buffer.slice();
+      body.limit(len);
+      return new CacheEntry(url, varyHeaders, code, message, headers, sentRequestMillis, receivedResponseMillis, body);
+    } catch (RuntimeException e) {
+      throw new IOException("Invalid cache entry", e);
+    }
+  }
+
+  /**
+   * @return whether a response can be stored, as defined by RFC 7234
+   */
+  static boolean isCacheable(int code, Headers responseHeaders, Request request) {
+    switch (code) {
+      case 200:
+      case 203:
+      case 204:
+      case 300:
+      case 301:
+      case 308:
+      case 404:
+      case 405:
+      case 410:
+      case 414:
+      case 501:
+        break;
+      case 302:
+      case 307:
+        CacheControl cacheControl = CacheControl.parse(responseHeaders);
+        if (responseHeaders.get("Expires") == null && cacheControl.maxAgeSeconds() == -1 && !cacheControl.isPublic() && !cacheControl.isPrivate()) {
+          return false;
+        }
+        break;
+      default:
+        return false;
+    }
+    return !CacheControl.parse(responseHeaders).noStore() && !request.cacheControl().noStore() && !varyFields(responseHeaders).contains("*");
+  }
+
+  /**
+   * @return the request headers of the {@code request} named by the {@code Vary} header of the response
+   */
+  static Headers varyHeaders(Headers responseHeaders, Request request) {
+    Headers.Builder builder = new Headers.Builder();
+    for (String field : varyFields(responseHeaders)) {
+      for (String value : request.headers(field)) {
+        builder.add(field, value);
+      }
+    }
+    return builder.build();
+  }
+
+  private static TreeSet<String> varyFields(Headers headers) {
+    TreeSet<String> fields = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    for (String value : headers.values("Vary")) {
+      for (String field : value.split(",")) {
+        fields.add(field.trim().toLowerCase(Locale.US));
+      }
+    }
+    return fields;
+  }
+
+  private static boolean isContentSpecificHeader(String name) {
+    return "Content-Length".equalsIgnoreCase(name) || "Content-Encoding".equalsIgnoreCase(name) || "Content-Type".equalsIgnoreCase(name);
+  }
+
+  private static long parseSeconds(String value, long defaultValue) {
+    try {
+      return Math.max(0, Long.parseLong(value.trim()));
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  private static byte[][] encode(Headers headers) {
+    byte[][] bytes = new byte[headers.size() * 2][];
+    for (int i = 0;i < headers.size();i++) {
+      bytes[i * 2] = headers.name(i).getBytes(StandardCharsets.UTF_8);
+      bytes[i * 2 + 1] = headers.value(i).getBytes(StandardCharsets.UTF_8);
+    }
+    return bytes;
+  }
+
+  private static int size(byte[][] strings) {
+    int size = 4;
+    for (byte[] s : strings) {
+      size += 4 + s.length;
+    }
+    return size;
+  }
+
+  private static void put(ByteBuffer buffer, byte[][] strings) {
+    buffer.putInt(strings.length / 2);
+    for (byte[] s : strings) {
+      put(buffer, s);
+    }
+  }
+
+  private static void put(ByteBuffer buffer, byte[] s) {
+    buffer.putInt(s.length);
+    buffer.put(s);
+  }
+
+  private static Headers getHeaders(ByteBuffer buffer) {
+    int size = buffer.getInt();
+    Headers.Builder builder = new Headers.Builder();
+    for (int i = 0;i < size;i++) {
+      builder.add(getString(buffer), getString(buffer));
+    }
+    return builder.build();
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,76 @@
+package com.julienviet.retrofit.vertx;
+
+import okhttp3.Call;
+
+import java.io.IOException;
+
+/**
+ * Listener of the phases of the calls of a {@link VertxCallFactory}, each event carries the {@link System#nanoTime()}
+ * at which it happened.
+ *
+ * A call fires {@link #callStart} and then either {@link #callEnd} or {@link #callFailed}, the phases in between
+ * are only fired when a request is sent, e.g a response served by the cache has none. The events are fired on Vert.x
+ * threads and the request body events on the thread writing the body, the listener should not block.
+ *
+ * A call sent with a {@link RetryPolicy} fires the phases of the attempt that completed it and a coalesced call fires
+ * the phases of the shared request, when the call completes.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public interface CallListener {
+
+  /**
+   * Called when the call is enqueued.
+   */
+  default void callStart(Call call, long nanoTime) {
+  }
+
+  /**
+   * Called when a new connection has been established for the call, this includes the name resolution, the
+   * TCP connect and the TLS handshake. It is not called when the call reuses a pooled connection.
+   */
+  default void connectEnd(Call call, long nanoTime) {
+  }
+
+  /**
+   * Called when the call has acquired a connection and sent the request headers.
+   */
+  default void requestHeadersEnd(Call call, long nanoTime) {
+  }
+
+  /**
+   * Called when the request body has been written.
+   *
+   * @param byteCount the number of body bytes written
+   */
+  default void requestBodyEnd(Call call, long nanoTime, long byteCount) {
+  }
+
+  /**
+   * Called when the response headers have been received.
+   *
+   * @param statusCode the response status code
+   */
+  default void responseHeadersEnd(Call call, long nanoTime, int statusCode) {
+  }
+
+  /**
+   * Called when the response body has been received.
+   *
+   * @param byteCount the number of body bytes received
+   */
+  default void responseBodyEnd(Call call, long nanoTime, long byteCount) {
+  }
+
+  /**
+   * Called when the call has completed with a response.
+   */
+  default void callEnd(Call call, long nanoTime) {
+  }
+
+  /**
+   * Called when the call has failed.
+   */
+  default void callFailed(Call call, long nanoTime, IOException failure) {
+  }
+}
@@ -0,0 +1,65 @@
+package com.julienviet.retrofit.vertx;
+
+import java.lang.reflect.Method;
+
+/**
+ * The metrics SPI of the {@link VertxCallFactory}, the factory reports the calls of each Retrofit service method
+ * to an endpoint metric object.
+ *
+ * The factory calls the SPI on the call path, implementations should not block nor allocate when recording.
+ *
+ * @param <E> the type of the endpoint metric
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public interface CallMetrics<E> {
+
+  /**
+   * Resolve the endpoint metric of a service method, this is called for every call and should be cached by
+   * the implementation.
+   *
+   * @param method the Retrofit service method or {@code null} when the call is not created by Retrofit
+   * @return the endpoint metric
+   */
+  E endpoint(Method method);
+
+  /**
+   * Called when a call is enqueued.
+   *
+   * @param endpoint the endpoint metric
+   */
+  void callBegin(E endpoint);
+
+  /**
+   * Called when the response body of a call has been received.
+   *
+   * @param endpoint the endpoint metric
+   * @param statusCode the response status code
+   * @param queueNanos the time between the call enqueue and the request being assigned a connection
+   * @param ttfbNanos the time between the call enqueue and the reception of the response headers
+   * @param totalNanos the time between the call enqueue and the reception of the response body
+   * @param requestBytes the number of request body bytes sent
+   * @param responseBytes the number of response body bytes received
+   */
+  void callEnd(E endpoint, int statusCode, long queueNanos, long ttfbNanos, long totalNanos, long requestBytes, long responseBytes);
+
+  /**
+   * Called when a call fails.
+   *
+   * @param endpoint the endpoint metric
+   * @param totalNanos the time between the call enqueue and the failure
+   */
+  void callFailed(E endpoint, long totalNanos);
+
+  /**
+   * Called before {@link #callEnd} when the request body was compressed or the response body decompressed by
+   * the factory, a streamed response body is not reported.
+   *
+   * @param endpoint the endpoint metric
+   * @param request {@code true} for the request body, {@code false} for the response body
+   * @param bytes the size of the body
+   * @param compressedBytes the compressed size of the body
+   */
+  default void compression(E endpoint, boolean request, long bytes, long compressedBytes) {
+  }
+
+}
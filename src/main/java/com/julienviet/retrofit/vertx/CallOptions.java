@@ -0,0 +1,144 @@
+package com.julienviet.retrofit.vertx;
+
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.http.StreamPriority;
+
+/**
+ * Per call options, overriding the {@link VertxCallFactoryOptions} of the factory.
+ *
+ * The options are attached to a call as a request tag, e.g with a Retrofit {@code @Tag CallOptions options}
+ * method parameter.
+ *
+ * Timeouts are expressed in milliseconds, a {@code 0} value disables the timeout and a {@code -1}
+ * value (the default) uses the factory value.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class CallOptions {
+
+  private long connectTimeout = -1;
+  private long responseHeadersTimeout = -1;
+  private long idleTimeout = -1;
+  private long callTimeout = -1;
+  private StreamPriority streamPriority;
+  private AsyncFile responseBodyFile;
+
+  /**
+   * @return the connect timeout
+   */
+  public long getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * Set the maximum time the call waits for a connection to the server.
+   *
+   * @param connectTimeout the timeout in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public CallOptions setConnectTimeout(long connectTimeout) {
+    this.connectTimeout = checkTimeout(connectTimeout);
+    return this;
+  }
+
+  /**
+   * @return the response headers timeout
+   */
+  public long getResponseHeadersTimeout() {
+    return responseHeadersTimeout;
+  }
+
+  /**
+   * Set the maximum time the call waits for the response headers after the request is sent.
+   *
+   * @param responseHeadersTimeout the timeout in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public CallOptions setResponseHeadersTimeout(long responseHeadersTimeout) {
+    this.responseHeadersTimeout = checkTimeout(responseHeadersTimeout);
+    return this;
+  }
+
+  /**
+   * @return the idle timeout
+   */
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Set the maximum time the call can wait for response data.
+   *
+   * @param idleTimeout the timeout in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public CallOptions setIdleTimeout(long idleTimeout) {
+    this.idleTimeout = checkTimeout(idleTimeout);
+    return this;
+  }
+
+  /**
+   * @return the call timeout
+   */
+  public long getCallTimeout() {
+    return callTimeout;
+  }
+
+  /**
+   * Set the maximum time of the call, from the moment it is enqueued until its response body is received.
+   *
+   * @param callTimeout the timeout in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public CallOptions setCallTimeout(long callTimeout) {
+    this.callTimeout = checkTimeout(callTimeout);
+    return this;
+  }
+
+  /**
+   * @return the HTTP/2 stream priority or {@code null} for the default priority
+   */
+  public StreamPriority getStreamPriority() {
+    return streamPriority;
+  }
+
+  /**
+   * Set the priority of the HTTP/2 stream of the call, e.g a higher weight for latency critical calls sharing
+   * a connection with bulk transfers. The priority is ignored by HTTP/1.x connections.
+   *
+   * @param streamPriority the priority
+   * @return a reference to this, so the API can be used fluently
+   */
+  public CallOptions setStreamPriority(StreamPriority streamPriority) {
+    this.streamPriority = streamPriority;
+    return this;
+  }
+
+  /**
+   * @return the file the response body is written to or {@code null}
+   */
+  public AsyncFile getResponseBodyFile() {
+    return responseBodyFile;
+  }
+
+  /**
+   * Set the file a successful response body is written to instead of being buffered, the file is written with
+   * back-pressure and flushed before the call completes with an empty body. The file is not closed.
+   *
+   * The call is neither coalesced with other calls nor hedged, the file is written by a single request.
+   *
+   * @param responseBodyFile the file
+   * @return a reference to this, so the API can be used fluently
+   */
+  public CallOptions setResponseBodyFile(AsyncFile responseBodyFile) {
+    this.responseBodyFile = responseBodyFile;
+    return this;
+  }
+
+  private static long checkTimeout(long timeout) {
+    if (timeout < -1) {
+      throw new IllegalArgumentException("Timeout must be >= -1");
+    }
+    return timeout;
+  }
+}
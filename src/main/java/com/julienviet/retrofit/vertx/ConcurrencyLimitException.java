@@ -0,0 +1,17 @@
+package com.julienviet.retrofit.vertx;
+
+import java.io.IOException;
+
+/**
+ * Signals a call rejected by the {@link ConcurrencyLimiter} of its host, the request was not sent.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class ConcurrencyLimitException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  public ConcurrencyLimitException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,218 @@
+package com.julienviet.retrofit.vertx;
+
+/**
+ * Options configuring the adaptive concurrency limit of the hosts of a {@link VertxCallFactory}.
+ *
+ * Each host has a limit of in-flight requests learnt from the observed round trip times, the calls exceeding the limit
+ * wait in a bounded queue or fail with a {@link ConcurrencyLimitException}.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class ConcurrencyLimitOptions {
+
+  /**
+   * The default algorithm = {@link LimitAlgorithm#VEGAS}
+   */
+  public static final LimitAlgorithm DEFAULT_ALGORITHM = LimitAlgorithm.VEGAS;
+
+  /**
+   * The default initial limit = 20
+   */
+  public static final int DEFAULT_INITIAL_LIMIT = 20;
+
+  /**
+   * The default min limit = 1
+   */
+  public static final int DEFAULT_MIN_LIMIT = 1;
+
+  /**
+   * The default max limit = 1000
+   */
+  public static final int DEFAULT_MAX_LIMIT = 1000;
+
+  /**
+   * The default backoff ratio = 0.9
+   */
+  public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+  /**
+   * The default max queue size = 0, calls are rejected immediately
+   */
+  public static final int DEFAULT_MAX_QUEUE_SIZE = 0;
+
+  /**
+   * The default queue timeout = 100 ms
+   */
+  public static final long DEFAULT_QUEUE_TIMEOUT = 100;
+
+  private LimitAlgorithm algorithm;
+  private int initialLimit;
+  private int minLimit;
+  private int maxLimit;
+  private double backoffRatio;
+  private int maxQueueSize;
+  private long queueTimeout;
+
+  public ConcurrencyLimitOptions() {
+    algorithm = DEFAULT_ALGORITHM;
+    initialLimit = DEFAULT_INITIAL_LIMIT;
+    minLimit = DEFAULT_MIN_LIMIT;
+    maxLimit = DEFAULT_MAX_LIMIT;
+    backoffRatio = DEFAULT_BACKOFF_RATIO;
+    maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+    queueTimeout = DEFAULT_QUEUE_TIMEOUT;
+  }
+
+  public ConcurrencyLimitOptions(ConcurrencyLimitOptions other) {
+    algorithm = other.algorithm;
+    initialLimit = other.initialLimit;
+    minLimit = other.minLimit;
+    maxLimit = other.maxLimit;
+    backoffRatio = other.backoffRatio;
+    maxQueueSize = other.maxQueueSize;
+    queueTimeout = other.queueTimeout;
+  }
+
+  /**
+   * @return the limit algorithm
+   */
+  public LimitAlgorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  /**
+   * Set the algorithm adapting the limit.
+   *
+   * @param algorithm the algorithm
+   * @return a reference to this, so the API can be used fluently
+   */
+  public ConcurrencyLimitOptions setAlgorithm(LimitAlgorithm algorithm) {
+    if (algorithm == null) {
+      throw new NullPointerException("No null algorithm");
+    }
+    this.algorithm = algorithm;
+    return this;
+  }
+
+  /**
+   * @return the initial limit
+   */
+  public int getInitialLimit() {
+    return initialLimit;
+  }
+
+  /**
+   * Set the limit of a host before any call completed.
+   *
+   * @param initialLimit the initial limit
+   * @return a reference to this, so the API can be used fluently
+   */
+  public ConcurrencyLimitOptions setInitialLimit(int initialLimit) {
+    this.initialLimit = checkLimit(initialLimit);
+    return this;
+  }
+
+  /**
+   * @return the min limit
+   */
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  /**
+   * Set the lowest limit of a host.
+   *
+   * @param minLimit the min limit
+   * @return a reference to this, so the API can be used fluently
+   */
+  public ConcurrencyLimitOptions setMinLimit(int minLimit) {
+    this.minLimit = checkLimit(minLimit);
+    return this;
+  }
+
+  /**
+   * @return the max limit
+   */
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  /**
+   * Set the highest limit of a host.
+   *
+   * @param maxLimit the max limit
+   * @return a reference to this, so the API can be used fluently
+   */
+  public ConcurrencyLimitOptions setMaxLimit(int maxLimit) {
+    this.maxLimit = checkLimit(maxLimit);
+    return this;
+  }
+
+  /**
+   * @return the backoff ratio
+   */
+  public double getBackoffRatio() {
+    return backoffRatio;
+  }
+
+  /**
+   * Set the ratio the {@link LimitAlgorithm#AIMD} algorithm applies to the limit when a call fails.
+   *
+   * @param backoffRatio the ratio between {@code 0} and {@code 1}
+   * @return a reference to this, so the API can be used fluently
+   */
+  public ConcurrencyLimitOptions setBackoffRatio(double backoffRatio) {
+    if (backoffRatio <= 0 || backoffRatio >= 1) {
+      throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+    }
+    this.backoffRatio = backoffRatio;
+    return this;
+  }
+
+  /**
+   * @return the max queue size
+   */
+  public int getMaxQueueSize() {
+    return maxQueueSize;
+  }
+
+  /**
+   * Set the max number of calls of a host waiting for the in-flight calls to complete, the calls exceeding the limit
+   * are rejected immediately when the queue is full.
+   *
+   * @param maxQueueSize the max queue size
+   * @return a reference to this, so the API can be used fluently
+   */
+  public ConcurrencyLimitOptions setMaxQueueSize(int maxQueueSize) {
+    if (maxQueueSize < 0) {
+      throw new IllegalArgumentException("Max queue size must be >= 0");
+    }
+    this.maxQueueSize = maxQueueSize;
+    return this;
+  }
+
+  /**
+   * @return the queue timeout
+   */
+  public long getQueueTimeout() {
+    return queueTimeout;
+  }
+
+  /**
+   * Set the maximum time a call waits in the queue before it is rejected, a {@code 0} value disables the timeout.
+   *
+   * @param queueTimeout the timeout in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public ConcurrencyLimitOptions setQueueTimeout(long queueTimeout) {
+    this.queueTimeout = VertxCallFactoryOptions.checkTimeout(queueTimeout);
+    return this;
+  }
+
+  private static int checkLimit(int limit) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limit must be >= 1");
+    }
+    return limit;
+  }
+}
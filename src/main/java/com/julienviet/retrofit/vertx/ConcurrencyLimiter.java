@@ -0,0 +1,203 @@
+package com.julienviet.retrofit.vertx;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The adaptive concurrency limit of a host: a call acquires a permit before its request is sent and releases it
+ * with the round trip time of the request, the limit of in-flight requests is adapted with the {@link LimitAlgorithm}.
+ *
+ * The getters report the state of the limiter, e.g to be exposed as metrics.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class ConcurrencyLimiter {
+
+  private final Vertx vertx;
+  private final String host;
+  private final ConcurrencyLimitOptions options;
+  private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+  private final AtomicLong rejectedCount = new AtomicLong();
+  private double limit;
+  private int inFlight;
+  private long minRtt = Long.MAX_VALUE;
+
+  ConcurrencyLimiter(Vertx vertx, String host, ConcurrencyLimitOptions options) {
+    this.vertx = vertx;
+    this.host = host;
+    this.options = options;
+    this.limit = Math.max(options.getMinLimit(), Math.min(options.getMaxLimit(), options.getInitialLimit()));
+  }
+
+  /**
+   * @return the {@code host:port} of the limiter
+   */
+  public String host() {
+    return host;
+  }
+
+  /**
+   * @return the current limit of in-flight requests
+   */
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  /**
+   * @return the number of in-flight requests
+   */
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * @return the number of calls waiting for a permit
+   */
+  public synchronized int getQueueSize() {
+    return waiters.size();
+  }
+
+  /**
+   * @return the number of rejected calls
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * Acquire a permit, the {@code handler} is called immediately when a permit is available or the call is rejected,
+   * otherwise the call waits in the queue and the {@code handler} is called later on the {@code context}.
+   *
+   * @param context the context of the call
+   * @param handler the handler
+   * @return the task removing the call from the queue when it is cancelled or {@code null} when the call does not wait
+   */
+  Runnable acquire(Context context, Handler<AsyncResult<Void>> handler) {
+    boolean acquired;
+    synchronized (this) {
+      acquired = waiters.isEmpty() && inFlight < (int) limit;
+      if (acquired) {
+        inFlight++;
+      } else if (waiters.size() < options.getMaxQueueSize()) {
+        Waiter waiter = new Waiter(context, handler);
+        waiters.add(waiter);
+        if (options.getQueueTimeout() > 0) {
+          waiter.timer = vertx.setTimer(options.getQueueTimeout(), id -> timeout(waiter));
+        }
+        return () -> cancel(waiter);
+      }
+    }
+    if (acquired) {
+      handler.handle(Future.succeededFuture());
+    } else {
+      rejectedCount.incrementAndGet();
+      handler.handle(Future.failedFuture(rejection()));
+    }
+    return null;
+  }
+
+  private synchronized void cancel(Waiter waiter) {
+    if (waiters.remove(waiter) && waiter.timer >= 0) {
+      vertx.cancelTimer(waiter.timer);
+    }
+  }
+
+  private void timeout(Waiter waiter) {
+    synchronized (this) {
+      if (!waiters.remove(waiter)) {
+        return;
+      }
+    }
+    rejectedCount.incrementAndGet();
+    waiter.handler.handle(Future.failedFuture(rejection()));
+  }
+
+  private ConcurrencyLimitException rejection() {
+    return new ConcurrencyLimitException("Concurrency limit of " + host + " exceeded");
+  }
+
+  /**
+   * Release a permit and adapt the limit with the outcome of the request, the permit is granted to the next waiting
+   * call.
+   *
+   * @param rttNanos the round trip time of the request or {@code -1} when the request has no outcome, e.g cancelled
+   * @param dropped whether the request failed or the host reported an overload
+   */
+  void release(long rttNanos, boolean dropped) {
+    Waiter next;
+    synchronized (this) {
+      if (rttNanos >= 0) {
+        update(rttNanos, dropped);
+      }
+      inFlight--;
+      if (inFlight >= (int) limit || (next = waiters.poll()) == null) {
+        return;
+      }
+      inFlight++;
+      if (next.timer >= 0) {
+        vertx.cancelTimer(next.timer);
+      }
+    }
+    next.context.runOnContext(v -> next.handler.handle(Future.succeededFuture()));
+  }
+
+  private void update(long rttNanos, boolean dropped) {
+    double newLimit;
+    switch (options.getAlgorithm()) {
+      case AIMD:
+        if (dropped) {
+          newLimit = limit * options.getBackoffRatio();
+        } else if (inFlight * 2 >= limit) {
+          newLimit = limit + 1;
+        } else {
+          return;
+        }
+        break;
+      case VEGAS:
+        if (rttNanos > 0) {
+          minRtt = Math.min(minRtt, rttNanos);
+        }
+        double log = Math.max(1, Math.log10(limit));
+        if (dropped) {
+          newLimit = limit - log;
+        } else if (inFlight * 2 < limit) {
+          // Not enough in-flight requests to learn anything about the limit
+          return;
+        } else {
+          // Requests queued by the host in addition to the ones it can serve without delay
+          double queueSize = Math.ceil(limit * (1 - (double) minRtt / Math.max(rttNanos, minRtt)));
+          if (queueSize <= log) {
+            newLimit = limit + 6 * log;
+          } else if (queueSize < 3 * log) {
+            newLimit = limit + log;
+          } else if (queueSize > 6 * log) {
+            newLimit = limit - log;
+          } else {
+            return;
+          }
+        }
+        break;
+      default:
+        throw new AssertionError();
+    }
+    limit = Math.max(options.getMinLimit(), Math.min(options.getMaxLimit(), newLimit));
+  }
+
+  private static class Waiter {
+
+    private final Context context;
+    private final Handler<AsyncResult<Void>> handler;
+    private long timer = -1;
+
+    Waiter(Context context, Handler<AsyncResult<Void>> handler) {
+      this.context = context;
+      this.handler = handler;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package com.julienviet.retrofit.vertx;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The default {@link CallMetrics} implementation recording the latencies of each service method in {@link Histogram}
+ * along with the in-flight calls, the status classes and the bytes sent and received.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class DefaultCallMetrics implements CallMetrics<DefaultCallMetrics.Endpoint> {
+
+  private final ConcurrentHashMap<Method, Endpoint> endpoints = new ConcurrentHashMap<>();
+  private final Endpoint unknown = new Endpoint(null);
+
+  /**
+   * @return the endpoints of the service methods called so far
+   */
+  public Map<Method, Endpoint> endpoints() {
+    return Collections.unmodifiableMap(endpoints);
+  }
+
+  /**
+   * @return the endpoint of the calls not created by a Retrofit service method
+   */
+  public Endpoint unknownEndpoint() {
+    return unknown;
+  }
+
+  @Override
+  public Endpoint endpoint(Method method) {
+    if (method == null) {
+      return unknown;
+    }
+    Endpoint endpoint = endpoints.get(method);
+    if (endpoint == null) {
+      endpoint = endpoints.computeIfAbsent(method, Endpoint::new);
+    }
+    return endpoint;
+  }
+
+  @Override
+  public void callBegin(Endpoint endpoint) {
+    endpoint.inFlight.incrementAndGet();
+  }
+
+  @Override
+  public void callEnd(Endpoint endpoint, int statusCode, long queueNanos, long ttfbNanos, long totalNanos, long requestBytes, long responseBytes) {
+    endpoint.inFlight.decrementAndGet();
+    endpoint.queue.record(queueNanos);
+    endpoint.ttfb.record(ttfbNanos);
+    endpoint.total.record(totalNanos);
+    endpoint.statusClasses.incrementAndGet(Math.min(Math.max(statusCode / 100, 1), 5) - 1);
+    endpoint.bytesSent.addAndGet(requestBytes);
+    endpoint.bytesReceived.addAndGet(responseBytes);
+  }
+
+  @Override
+  public void callFailed(Endpoint endpoint, long totalNanos) {
+    endpoint.inFlight.decrementAndGet();
+    endpoint.total.record(totalNanos);
+    endpoint.failures.incrementAndGet();
+  }
+
+  @Override
+  public void compression(Endpoint endpoint, boolean request, long bytes, long compressedBytes) {
+    long ratio = bytes > 0 ? compressedBytes * 100 / bytes : 100;
+    (request ? endpoint.requestCompression : endpoint.responseCompression).record(ratio);
+  }
+
+  /**
+   * The metrics of a service method, latencies are in nanoseconds.
+   */
+  public static class Endpoint {
+
+    private final Method method;
+    private final Histogram queue = new Histogram();
+    private final Histogram ttfb = new Histogram();
+    private final Histogram total = new Histogram();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLongArray statusClasses = new AtomicLongArray(5);
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final Histogram requestCompression = new Histogram();
+    private final Histogram responseCompression = new Histogram();
+
+    private Endpoint(Method method) {
+      this.method = method;
+    }
+
+    /**
+     * @return the service method or {@code null} for the unknown endpoint
+     */
+    public Method method() {
+      return method;
+    }
+
+    /**
+     * @return the time calls wait for a connection
+     */
+    public Histogram queue() {
+      return queue;
+    }
+
+    /**
+     * @return the time to the first byte of the response
+     */
+    public Histogram ttfb() {
+      return ttfb;
+    }
+
+    /**
+     * @return the total time of the calls
+     */
+    public Histogram total() {
+      return total;
+    }
+
+    /**
+     * @return the number of in-flight calls
+     */
+    public long inFlight() {
+      return inFlight.get();
+    }
+
+    /**
+     * @param statusClass the status class between {@code 1} and {@code 5}, e.g {@code 2} for {@code 2xx} responses
+     * @return the number of responses of the status class
+     */
+    public long responses(int statusClass) {
+      if (statusClass < 1 || statusClass > 5) {
+        throw new IllegalArgumentException("Status class must be between 1 and 5");
+      }
+      return statusClasses.get(statusClass - 1);
+    }
+
+    /**
+     * @return the number of failed calls
+     */
+    public long failures() {
+      return failures.get();
+    }
+
+    /**
+     * @return the number of request body bytes sent
+     */
+    public long bytesSent() {
+      return bytesSent.get();
+    }
+
+    /**
+     * @return the number of response body bytes received
+     */
+    public long bytesReceived() {
+      return bytesReceived.get();
+    }
+
+    /**
+     * @return the compressed size of the compressed request bodies, in percent of their size
+     */
+    public Histogram requestCompression() {
+      return requestCompression;
+    }
+
+    /**
+     * @return the compressed size of the compressed response bodies, in percent of their size
+     */
+    public Histogram responseCompression() {
+      return responseCompression;
+    }
+  }
+}
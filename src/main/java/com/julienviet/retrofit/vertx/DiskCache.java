@@ -0,0 +1,136 @@
+package com.julienviet.retrofit.vertx;
+
+import okio.ByteString;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The disk tier of the {@link ResponseCache}, each entry is stored in a file read through a memory mapping, the body
+ * is served from the mapping without being copied on the heap.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class DiskCache {
+
+  private static final String SUFFIX = ".entry";
+
+  private final Path directory;
+  private final long maxSize;
+  private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+  private long size;
+
+  DiskCache(Path directory, long maxSize) throws IOException {
+    this.directory = directory;
+    this.maxSize = maxSize;
+    Files.createDirectories(directory);
+    File[] existing = directory.toFile().listFiles((dir, name) -> name.endsWith(SUFFIX));
+    if (existing != null) {
+      Arrays.sort(existing, Comparator.comparingLong(File::lastModified));
+      for (File file : existing) {
+        files.put(file.getName(), file.length());
+        size += file.length();
+      }
+    }
+  }
+
+  /**
+   * Map the entry for the {@code url}, this performs blocking IO.
+   *
+   * @return the entry for the {@code url} or {@code null}
+   */
+  CacheEntry get(String url) {
+    String name = fileName(url);
+    synchronized (this) {
+      if (files.get(name) == null) {
+        return null;
+      }
+    }
+    try (FileChannel channel = FileChannel.open(directory.resolve(name), StandardOpenOption.READ)) {
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      CacheEntry entry = CacheEntry.decode(mapped);
+      return entry.url.equals(url) ? entry : null;
+    } catch (IOException e) {
+      remove(url);
+      return null;
+    }
+  }
+
+  /**
+   * Write the {@code entry}, this performs blocking IO.
+   */
+  void put(CacheEntry entry) {
+    String name = fileName(entry.url);
+    ByteBuffer buffer = entry.encode();
+    long len = buffer.remaining();
+    if (len > maxSize) {
+      remove(entry.url);
+      return;
+    }
+    try {
+      Path tmp = Files.createTempFile(directory, null, ".tmp");
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+      Files.move(tmp, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      remove(entry.url);
+      return;
+    }
+    synchronized (this) {
+      Long previous = files.put(name, len);
+      size += len - (previous != null ? previous : 0);
+      Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator();
+      while (size > maxSize && it.hasNext()) {
+        Map.Entry<String, Long> eldest = it.next();
+        it.remove();
+        size -= eldest.getValue();
+        delete(eldest.getKey());
+      }
+    }
+  }
+
+  void remove(String url) {
+    String name = fileName(url);
+    synchronized (this) {
+      Long len = files.remove(name);
+      if (len != null) {
+        size -= len;
+      }
+    }
+    delete(name);
+  }
+
+  synchronized void clear() {
+    for (String name : files.keySet()) {
+      delete(name);
+    }
+    files.clear();
+    size = 0;
+  }
+
+  private void delete(String name) {
+    try {
+      Files.deleteIfExists(directory.resolve(name));
+    } catch (IOException ignore) {
+    }
+  }
+
+  private static String fileName(String url) {
+    return ByteString.encodeUtf8(url).md5().hex() + SUFFIX;
+  }
+}
@@ -0,0 +1,104 @@
+package com.julienviet.retrofit.vertx;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A request body sending a region of a file.
+ *
+ * The {@link VertxCallFactory} pipes the file to the request with an {@code AsyncFile} and back-pressure, the file
+ * is read by the event loop without copying it to okio buffers. Other call factories, or a compressed request, write
+ * the file with {@link #writeTo}.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class FileRequestBody extends RequestBody {
+
+  /**
+   * Create a body sending the whole {@code file}.
+   *
+   * @param contentType the content type
+   * @param file the file
+   * @return the body
+   */
+  public static FileRequestBody create(MediaType contentType, File file) {
+    return create(contentType, file, 0, file.length());
+  }
+
+  /**
+   * Create a body sending {@code length} bytes of a {@code file} starting at {@code offset}.
+   *
+   * @param contentType the content type
+   * @param file the file
+   * @param offset the offset of the first byte to send
+   * @param length the number of bytes to send
+   * @return the body
+   */
+  public static FileRequestBody create(MediaType contentType, File file, long offset, long length) {
+    if (file == null) {
+      throw new NullPointerException("file == null");
+    }
+    if (offset < 0) {
+      throw new IllegalArgumentException("Offset must be >= 0");
+    }
+    if (length < 0) {
+      throw new IllegalArgumentException("Length must be >= 0");
+    }
+    return new FileRequestBody(contentType, file, offset, length);
+  }
+
+  private final MediaType contentType;
+  private final File file;
+  private final long offset;
+  private final long length;
+
+  private FileRequestBody(MediaType contentType, File file, long offset, long length) {
+    this.contentType = contentType;
+    this.file = file;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * @return the file
+   */
+  public File file() {
+    return file;
+  }
+
+  /**
+   * @return the offset of the first byte to send
+   */
+  public long offset() {
+    return offset;
+  }
+
+  @Override
+  public MediaType contentType() {
+    return contentType;
+  }
+
+  @Override
+  public long contentLength() {
+    return length;
+  }
+
+  @Override
+  public void writeTo(BufferedSink sink) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      channel.position(offset);
+      try (Source source = Okio.source(Channels.newInputStream(channel))) {
+        sink.write(source, length);
+      }
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.julienviet.retrofit.vertx;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A response body read from a file through memory mappings, the file is mapped by windows as the source is consumed
+ * so the body is not limited to {@code 2GB}. The channel is closed with the body source.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class FileResponseBody extends ResponseBody {
+
+  static final long WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private final MediaType contentType;
+  private final FileChannel channel;
+  private final long contentLength;
+  private BufferedSource source;
+
+  FileResponseBody(MediaType contentType, FileChannel channel) throws IOException {
+    this.contentType = contentType;
+    this.channel = channel;
+    this.contentLength = channel.size();
+  }
+
+  @Override
+  public MediaType contentType() {
+    return contentType;
+  }
+
+  @Override
+  public long contentLength() {
+    return contentLength;
+  }
+
+  @Override
+  public synchronized BufferedSource source() {
+    if (source == null) {
+      source = Okio.buffer(new MappedSource());
+    }
+    return source;
+  }
+
+  private class MappedSource implements Source {
+
+    private long position;
+    private ByteBuffer window;
+
+    @Override
+    public long read(okio.Buffer sink, long byteCount) throws IOException {
+      if (byteCount < 0) {
+        throw new IllegalArgumentException("byteCount < 0: " + byteCount);
+      }
+      if (window == null || !window.hasRemaining()) {
+        if (position == contentLength) {
+          return -1;
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, contentLength - position));
+      }
+      int amount = (int) Math.min(byteCount, window.remaining());
+      ByteBuffer slice = window.duplicate();
+      slice.limit(slice.position() + amount);
+      sink.write(slice);
+      window.position(window.position() + amount);
+      position += amount;
+      return amount;
+    }
+
+    @Override
+    public Timeout timeout() {
+      return Timeout.NONE;
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package com.julienviet.retrofit.vertx;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of positive values with a bounded relative error of about 3%.
+ *
+ * Values are counted in log-linear buckets: values below {@code 64} have their own bucket and each power of two
+ * above is divided in {@code 32} buckets. The buckets are allocated upfront so recording a value does not allocate.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+  private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (64 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Record a {@code value}, negative values are recorded as {@code 0}.
+   *
+   * @param value the value
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts.incrementAndGet(index(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long current;
+    while (value > (current = max.get())) {
+      if (max.compareAndSet(current, value)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * @return the number of recorded values
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return the max recorded value
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @return the mean of the recorded values
+   */
+  public double getMean() {
+    long c = count.get();
+    return c == 0 ? 0 : (double) sum.get() / c;
+  }
+
+  /**
+   * @param percentile the percentile between {@code 0} and {@code 100}
+   * @return the value at the {@code percentile}, i.e the highest value equivalent to the bucket of the percentile
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100");
+    }
+    long total = 0;
+    for (int i = 0;i < BUCKET_COUNT;i++) {
+      total += counts.get(i);
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long acc = 0;
+    for (int i = 0;i < BUCKET_COUNT;i++) {
+      acc += counts.get(i);
+      if (acc >= target) {
+        return Math.min(highestEquivalentValue(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Reset the histogram.
+   */
+  public void reset() {
+    for (int i = 0;i < BUCKET_COUNT;i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+
+  static int index(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int sub = (int) (value >>> shift);
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + sub - SUB_BUCKET_HALF_COUNT;
+  }
+
+  static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+    long sub = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+    return ((sub + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,22 @@
+package com.julienviet.retrofit.vertx;
+
+/**
+ * The algorithm adapting the concurrency limit of a host.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public enum LimitAlgorithm {
+
+  /**
+   * Additive increase multiplicative decrease: the limit grows by one while the calls succeed and is reduced by
+   * the backoff ratio when a call fails or the host is overloaded.
+   */
+  AIMD,
+
+  /**
+   * TCP Vegas like: the limit is adjusted with the queue size estimated from the ratio of the minimum round trip time
+   * and the round trip time of the calls, it reacts to the latency before calls fail.
+   */
+  VEGAS
+
+}
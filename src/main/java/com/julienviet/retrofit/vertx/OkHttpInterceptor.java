@@ -0,0 +1,60 @@
+package com.julienviet.retrofit.vertx;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Adapts an OkHttp {@link Interceptor} to a {@link VertxInterceptor}, the interceptor is run on the blocking executor
+ * of the factory when the call is on an event loop since its {@code proceed} blocks until the response is received.
+ *
+ * The thread running the interceptor is held until the response is received, the next OkHttp interceptors of the
+ * chain run on the same thread.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class OkHttpInterceptor implements VertxInterceptor {
+
+  /**
+   * The chains of the factory implement the OkHttp chain and run blocking code with the factory executor.
+   */
+  interface BlockingChain extends VertxInterceptor.Chain, Interceptor.Chain {
+
+    /**
+     * Run {@code blockingCode} on the blocking executor of the factory, the {@code handler} is called on the caller
+     * context.
+     */
+    <T> void executeBlocking(Callable<T> blockingCode, Handler<AsyncResult<T>> handler);
+
+  }
+
+  private final Interceptor interceptor;
+
+  OkHttpInterceptor(Interceptor interceptor) {
+    if (interceptor == null) {
+      throw new NullPointerException("interceptor == null");
+    }
+    this.interceptor = interceptor;
+  }
+
+  @Override
+  public void intercept(Chain chain, Handler<AsyncResult<Response>> handler) {
+    BlockingChain blockingChain = (BlockingChain) chain;
+    if (Context.isOnEventLoopThread()) {
+      blockingChain.executeBlocking(() -> interceptor.intercept(blockingChain), handler);
+    } else {
+      AsyncResult<Response> result;
+      try {
+        result = Future.succeededFuture(interceptor.intercept(blockingChain));
+      } catch (Exception e) {
+        result = Future.failedFuture(e);
+      }
+      handler.handle(result);
+    }
+  }
+}
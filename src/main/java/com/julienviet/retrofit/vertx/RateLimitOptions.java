@@ -0,0 +1,188 @@
+package com.julienviet.retrofit.vertx;
+
+import okhttp3.Request;
+import retrofit2.Invocation;
+
+import java.lang.reflect.Method;
+import java.util.function.Function;
+
+/**
+ * Options configuring the rate limit of the calls of a {@link VertxCallFactory}.
+ *
+ * The calls are rate limited by a token bucket per key, e.g per host or per Retrofit service method: a call takes
+ * a token before its request is sent, the calls finding no token wait in a bounded queue and are released by Vert.x
+ * timers as tokens are refilled. The {@code Retry-After} and {@code X-RateLimit-*} response headers pause the calls
+ * until the upstream rate limit is reset.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class RateLimitOptions {
+
+  /**
+   * The key rate limiting the calls of each host, e.g {@code api.github.com:443}
+   */
+  public static final Function<Request, String> HOST_KEY = request -> request.url().host() + ":" + request.url().port();
+
+  /**
+   * The key rate limiting the calls of each Retrofit service method, the calls without service method are
+   * rate limited per host
+   */
+  public static final Function<Request, String> METHOD_KEY = request -> {
+    Invocation invocation = request.tag(Invocation.class);
+    if (invocation == null) {
+      return HOST_KEY.apply(request);
+    }
+    Method method = invocation.method();
+    return method.getDeclaringClass().getName() + "#" + method.getName();
+  };
+
+  /**
+   * The default key = {@link #HOST_KEY}
+   */
+  public static final Function<Request, String> DEFAULT_KEY = HOST_KEY;
+
+  /**
+   * The default rate = 10 calls per second
+   */
+  public static final double DEFAULT_RATE = 10;
+
+  /**
+   * The default burst = 10 calls
+   */
+  public static final int DEFAULT_BURST = 10;
+
+  /**
+   * The default max queue size = 100
+   */
+  public static final int DEFAULT_MAX_QUEUE_SIZE = 100;
+
+  /**
+   * The default max wait = 10000 ms
+   */
+  public static final long DEFAULT_MAX_WAIT = 10000;
+
+  private Function<Request, String> key;
+  private double rate;
+  private int burst;
+  private int maxQueueSize;
+  private long maxWait;
+
+  public RateLimitOptions() {
+    key = DEFAULT_KEY;
+    rate = DEFAULT_RATE;
+    burst = DEFAULT_BURST;
+    maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+    maxWait = DEFAULT_MAX_WAIT;
+  }
+
+  public RateLimitOptions(RateLimitOptions other) {
+    key = other.key;
+    rate = other.rate;
+    burst = other.burst;
+    maxQueueSize = other.maxQueueSize;
+    maxWait = other.maxWait;
+  }
+
+  /**
+   * @return the function computing the rate limit key of a request
+   */
+  public Function<Request, String> getKey() {
+    return key;
+  }
+
+  /**
+   * Set the function computing the rate limit key of a request, the requests with the same key share a token bucket.
+   *
+   * @param key the function
+   * @return a reference to this, so the API can be used fluently
+   */
+  public RateLimitOptions setKey(Function<Request, String> key) {
+    if (key == null) {
+      throw new NullPointerException("No null key");
+    }
+    this.key = key;
+    return this;
+  }
+
+  /**
+   * @return the rate
+   */
+  public double getRate() {
+    return rate;
+  }
+
+  /**
+   * Set the number of calls per second of a key.
+   *
+   * @param rate the rate
+   * @return a reference to this, so the API can be used fluently
+   */
+  public RateLimitOptions setRate(double rate) {
+    if (rate <= 0) {
+      throw new IllegalArgumentException("Rate must be > 0");
+    }
+    this.rate = rate;
+    return this;
+  }
+
+  /**
+   * @return the burst
+   */
+  public int getBurst() {
+    return burst;
+  }
+
+  /**
+   * Set the number of calls of a key sent without waiting after an idle period, i.e the size of the token bucket.
+   *
+   * @param burst the burst
+   * @return a reference to this, so the API can be used fluently
+   */
+  public RateLimitOptions setBurst(int burst) {
+    if (burst < 1) {
+      throw new IllegalArgumentException("Burst must be >= 1");
+    }
+    this.burst = burst;
+    return this;
+  }
+
+  /**
+   * @return the max queue size
+   */
+  public int getMaxQueueSize() {
+    return maxQueueSize;
+  }
+
+  /**
+   * Set the max number of calls of a key waiting for a token, the calls are rejected when the queue is full.
+   *
+   * @param maxQueueSize the max queue size
+   * @return a reference to this, so the API can be used fluently
+   */
+  public RateLimitOptions setMaxQueueSize(int maxQueueSize) {
+    if (maxQueueSize < 0) {
+      throw new IllegalArgumentException("Max queue size must be >= 0");
+    }
+    this.maxQueueSize = maxQueueSize;
+    return this;
+  }
+
+  /**
+   * @return the max wait
+   */
+  public long getMaxWait() {
+    return maxWait;
+  }
+
+  /**
+   * Set the maximum time a call waits for a token, a call that would wait longer is rejected immediately.
+   * A {@code 0} value does not bound the wait.
+   *
+   * @param maxWait the time in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public RateLimitOptions setMaxWait(long maxWait) {
+    this.maxWait = VertxCallFactoryOptions.checkTimeout(maxWait);
+    return this;
+  }
+}
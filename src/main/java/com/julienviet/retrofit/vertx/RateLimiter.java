@@ -0,0 +1,282 @@
+package com.julienviet.retrofit.vertx;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The token bucket rate limiting the calls of a key: a call takes a token before its request is sent, the calls
+ * finding no token wait in a queue released by a Vert.x timer as the tokens are refilled.
+ *
+ * The getters report the state of the limiter, e.g to be exposed as metrics.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class RateLimiter {
+
+  /**
+   * X-RateLimit-Reset values above are epoch seconds, values below are seconds to wait.
+   */
+  private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+
+  private final Vertx vertx;
+  private final String key;
+  private final RateLimitOptions options;
+  private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+  private final Histogram waitTimes = new Histogram();
+  private final AtomicLong rejectedCount = new AtomicLong();
+  private final double tokensPerNano;
+  private double tokens;
+  private long refillNanos;
+  private long pausedUntilNanos;
+  private long timer = -1;
+
+  RateLimiter(Vertx vertx, String key, RateLimitOptions options) {
+    this.vertx = vertx;
+    this.key = key;
+    this.options = options;
+    this.tokensPerNano = options.getRate() / TimeUnit.SECONDS.toNanos(1);
+    this.tokens = options.getBurst();
+    this.refillNanos = System.nanoTime();
+    this.pausedUntilNanos = refillNanos;
+  }
+
+  /**
+   * @return the key of the limiter
+   */
+  public String key() {
+    return key;
+  }
+
+  /**
+   * @return the number of tokens available
+   */
+  public synchronized int getAvailableTokens() {
+    refill(System.nanoTime());
+    return (int) tokens;
+  }
+
+  /**
+   * @return the number of calls waiting for a token
+   */
+  public synchronized int getQueueSize() {
+    return waiters.size();
+  }
+
+  /**
+   * @return the number of rejected calls
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * @return the time the calls waited for a token in nanoseconds
+   */
+  public Histogram waitTimes() {
+    return waitTimes;
+  }
+
+  /**
+   * Acquire a token, the {@code handler} is called immediately when a token is available or the call is rejected,
+   * otherwise the call waits in the queue and the {@code handler} is called later on the {@code context}.
+   *
+   * @param context the context of the call
+   * @param handler the handler
+   * @return the task removing the call from the queue when it waits, {@code null} otherwise
+   */
+  Runnable acquire(Context context, Handler<AsyncResult<Void>> handler) {
+    boolean acquired;
+    synchronized (this) {
+      long now = System.nanoTime();
+      refill(now);
+      acquired = waiters.isEmpty() && now >= pausedUntilNanos && tokens >= 1;
+      if (acquired) {
+        tokens--;
+      } else if (waiters.size() < options.getMaxQueueSize() && (options.getMaxWait() == 0 || waitNanos(now) <= TimeUnit.MILLISECONDS.toNanos(options.getMaxWait()))) {
+        Waiter waiter = new Waiter(context, handler, now);
+        waiters.add(waiter);
+        schedule(now);
+        return () -> cancel(waiter);
+      }
+    }
+    if (acquired) {
+      waitTimes.record(0);
+      handler.handle(Future.succeededFuture());
+    } else {
+      rejectedCount.incrementAndGet();
+      handler.handle(Future.failedFuture(rejection()));
+    }
+    return null;
+  }
+
+  private synchronized void cancel(Waiter waiter) {
+    waiters.remove(waiter);
+  }
+
+  /**
+   * Give back a token granted to a call that was cancelled or timed out before sending its request, the token goes
+   * to the next waiting call.
+   */
+  void giveBack() {
+    synchronized (this) {
+      long now = System.nanoTime();
+      refill(now);
+      tokens = Math.min(options.getBurst(), tokens + 1);
+    }
+    release();
+  }
+
+  private RateLimitException rejection() {
+    return new RateLimitException("Rate limit of " + key + " exceeded");
+  }
+
+  /**
+   * Update the limiter with the rate limit headers of a response: the calls are paused until the time given by the
+   * {@code Retry-After} header of a {@code 429} or {@code 503} response or by the {@code X-RateLimit-Reset} header
+   * when {@code X-RateLimit-Remaining} is {@code 0}, the tokens are capped by {@code X-RateLimit-Remaining}.
+   *
+   * @param statusCode the response status code
+   * @param retryAfter the {@code Retry-After} header or {@code null}
+   * @param remaining the {@code X-RateLimit-Remaining} header or {@code null}
+   * @param reset the {@code X-RateLimit-Reset} header or {@code null}
+   */
+  void update(int statusCode, String retryAfter, String remaining, String reset) {
+    long pauseMillis = -1;
+    long remainingTokens = -1;
+    if ((statusCode == 429 || statusCode == 503) && retryAfter != null) {
+      pauseMillis = parseRetryAfter(retryAfter);
+    }
+    if (remaining != null) {
+      try {
+        remainingTokens = Long.parseLong(remaining.trim());
+      } catch (NumberFormatException ignore) {
+      }
+      if (remainingTokens == 0 && reset != null) {
+        pauseMillis = Math.max(pauseMillis, parseReset(reset));
+      }
+    }
+    if (statusCode == 429 && pauseMillis < 0) {
+      // Over the limit without telling for how long, wait for a token
+      remainingTokens = 0;
+    }
+    List<Waiter> rejected = null;
+    synchronized (this) {
+      long now = System.nanoTime();
+      refill(now);
+      if (remainingTokens >= 0) {
+        tokens = Math.min(tokens, remainingTokens);
+      }
+      if (pauseMillis > 0) {
+        pausedUntilNanos = Math.max(pausedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(pauseMillis));
+        if (options.getMaxWait() > 0 && pauseMillis > options.getMaxWait() && !waiters.isEmpty()) {
+          // The waiting calls would wait too long
+          rejected = new ArrayList<>(waiters);
+          waiters.clear();
+        }
+      }
+      schedule(now);
+    }
+    if (rejected != null) {
+      rejectedCount.addAndGet(rejected.size());
+      for (Waiter waiter : rejected) {
+        waiter.context.runOnContext(v -> waiter.handler.handle(Future.failedFuture(rejection())));
+      }
+    }
+  }
+
+  private static long parseRetryAfter(String value) {
+    try {
+      return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+    } catch (NumberFormatException e) {
+      try {
+        ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+        return date.toInstant().toEpochMilli() - System.currentTimeMillis();
+      } catch (DateTimeParseException ignore) {
+        return -1;
+      }
+    }
+  }
+
+  private static long parseReset(String value) {
+    try {
+      long reset = Long.parseLong(value.trim());
+      if (reset >= EPOCH_SECONDS_THRESHOLD) {
+        return TimeUnit.SECONDS.toMillis(reset) - System.currentTimeMillis();
+      }
+      return TimeUnit.SECONDS.toMillis(reset);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private void refill(long now) {
+    tokens = Math.min(options.getBurst(), tokens + (now - refillNanos) * tokensPerNano);
+    refillNanos = now;
+  }
+
+  /**
+   * @return the time a call added to the queue would wait
+   */
+  private long waitNanos(long now) {
+    double missing = waiters.size() + 1 - tokens;
+    return Math.max(0, pausedUntilNanos - now) + (missing > 0 ? (long) (missing / tokensPerNano) : 0);
+  }
+
+  /**
+   * Schedule the timer releasing the next waiter when none is scheduled.
+   */
+  private void schedule(long now) {
+    if (timer >= 0 || waiters.isEmpty()) {
+      return;
+    }
+    long delayNanos = Math.max(pausedUntilNanos - now, tokens >= 1 ? 0 : (long) ((1 - tokens) / tokensPerNano));
+    timer = vertx.setTimer(Math.max(1, TimeUnit.NANOSECONDS.toMillis(delayNanos)), id -> release());
+  }
+
+  private void release() {
+    List<Waiter> granted = new ArrayList<>();
+    long now;
+    synchronized (this) {
+      if (timer >= 0) {
+        vertx.cancelTimer(timer);
+        timer = -1;
+      }
+      now = System.nanoTime();
+      refill(now);
+      while (now >= pausedUntilNanos && tokens >= 1 && !waiters.isEmpty()) {
+        tokens--;
+        granted.add(waiters.poll());
+      }
+      schedule(now);
+    }
+    for (Waiter waiter : granted) {
+      waitTimes.record(now - waiter.queuedNanos);
+      waiter.context.runOnContext(v -> waiter.handler.handle(Future.succeededFuture()));
+    }
+  }
+
+  private static class Waiter {
+
+    private final Context context;
+    private final Handler<AsyncResult<Void>> handler;
+    private final long queuedNanos;
+
+    Waiter(Context context, Handler<AsyncResult<Void>> handler, long queuedNanos) {
+      this.context = context;
+      this.handler = handler;
+      this.queuedNanos = queuedNanos;
+    }
+  }
+}
@@ -0,0 +1,246 @@
+package com.julienviet.retrofit.vertx;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.FileSystem;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpClientRequest;
+import okio.Sink;
+import okio.Timeout;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An okio sink writing the request body to the {@link HttpClientRequest}, the okio segments are transferred
+ * to Netty buffers in chunks without aggregating the whole body.
+ *
+ * When the request write queue is full, the writing thread waits until the request is drained unless it is an event
+ * loop thread or the sink buffers the body, so the memory used by the body remains bounded by the write queue size.
+ * The writing thread waits at most the write timeout, a request that does not drain fails the write.
+ *
+ * A {@link FileRequestBody} is piped instead from an {@link AsyncFile} paused while the request write queue is full,
+ * the buffer of a {@link BufferRequestBody} is written at once.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class RequestBodySink implements Sink {
+
+  static final int CHUNK_SIZE = 64 * 1024;
+
+  private final HttpClientRequest request;
+  private final Timeout timeout = new Timeout();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition drainedCondition = lock.newCondition();
+  private boolean drained;
+  private Throwable failure;
+  private volatile long bytesWritten;
+  private volatile boolean buffering;
+  private AsyncFile file;
+
+  RequestBodySink(HttpClientRequest request) {
+    this.request = request;
+  }
+
+  @Override
+  public void write(okio.Buffer source, long byteCount) throws IOException {
+    while (byteCount > 0) {
+      checkFailure();
+      int len = (int) Math.min(byteCount, CHUNK_SIZE);
+      ByteBuf chunk = Unpooled.buffer(len, len);
+      ByteBuffer dst = chunk.nioBuffer(0, len);
+      while (dst.hasRemaining()) {
+        source.read(dst);
+      }
+      chunk.writerIndex(len);
+      request.write(Buffer.buffer(chunk));
+      bytesWritten += len;
+      byteCount -= len;
+      awaitDrain();
+    }
+  }
+
+  /**
+   * Let the request buffer the body instead of waiting for the request to drain, the body is written by a thread of
+   * the call context that would run the drain handler.
+   */
+  void buffer() {
+    buffering = true;
+  }
+
+  /**
+   * Write a whole {@code buffer} to the request, the buffer is not copied.
+   *
+   * @param buffer the buffer
+   */
+  void write(Buffer buffer) {
+    request.write(buffer);
+    bytesWritten += buffer.length();
+  }
+
+  /**
+   * Pipe {@code length} bytes of a file starting at {@code offset} to the request, the {@code handler} is called when
+   * the file was written or failed to be read.
+   *
+   * @param fs the file system
+   * @param path the file path
+   * @param offset the offset of the first byte
+   * @param length the number of bytes
+   * @param handler the completion handler
+   */
+  void pipe(FileSystem fs, String path, long offset, long length, Handler<AsyncResult<Void>> handler) {
+    fs.open(path, new OpenOptions().setRead(true).setWrite(false).setCreate(false), ar -> {
+      if (ar.failed()) {
+        handler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      AsyncFile file = ar.result();
+      boolean failed;
+      lock.lock();
+      try {
+        failed = failure != null;
+        if (!failed) {
+          this.file = file;
+        }
+      } finally {
+        lock.unlock();
+      }
+      if (failed) {
+        // Failed while opening
+        file.close();
+        return;
+      }
+      file.setReadPos(offset).setReadLength(length).setReadBufferSize(CHUNK_SIZE);
+      file.exceptionHandler(err -> {
+        closeFile();
+        handler.handle(Future.failedFuture(err));
+      });
+      file.endHandler(v -> {
+        closeFile();
+        if (bytesWritten < length) {
+          handler.handle(Future.failedFuture(new EOFException("Unexpected end of file " + path)));
+        } else {
+          handler.handle(Future.succeededFuture());
+        }
+      });
+      file.handler(chunk -> {
+        request.write(chunk);
+        bytesWritten += chunk.length();
+        if (request.writeQueueFull()) {
+          file.pause();
+          request.drainHandler(v -> file.resume());
+        }
+      });
+    });
+  }
+
+  private void closeFile() {
+    AsyncFile file;
+    lock.lock();
+    try {
+      file = this.file;
+      this.file = null;
+    } finally {
+      lock.unlock();
+    }
+    if (file != null) {
+      file.close();
+    }
+  }
+
+  /**
+   * @return the number of bytes written to the request
+   */
+  long bytesWritten() {
+    return bytesWritten;
+  }
+
+  private void awaitDrain() throws IOException {
+    if (buffering || Context.isOnEventLoopThread() || !request.writeQueueFull()) {
+      return;
+    }
+    if (!timeout.hasDeadline() && timeout.timeoutNanos() == 0L) {
+      // Never wait forever for a request that does not drain
+      timeout.timeout(VertxCallFactoryOptions.DEFAULT_WRITE_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+    lock.lock();
+    try {
+      drained = false;
+    } finally {
+      lock.unlock();
+    }
+    request.drainHandler(v -> {
+      lock.lock();
+      try {
+        drained = true;
+        drainedCondition.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    });
+    while (request.writeQueueFull()) {
+      lock.lock();
+      try {
+        checkFailure();
+        if (!drained) {
+          Timeouts.await(drainedCondition, timeout);
+        }
+        drained = false;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    lock.lock();
+    try {
+      if (failure != null) {
+        throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Fails the sink, a thread waiting for the request to drain is released and a piped file is closed.
+   *
+   * @param cause the failure
+   */
+  void fail(Throwable cause) {
+    lock.lock();
+    try {
+      if (failure == null) {
+        failure = cause;
+        drainedCondition.signalAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+    closeFile();
+  }
+
+  @Override
+  public void flush() {
+  }
+
+  @Override
+  public Timeout timeout() {
+    return timeout;
+  }
+
+  @Override
+  public void close() {
+  }
+}
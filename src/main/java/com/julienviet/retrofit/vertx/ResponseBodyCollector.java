@@ -0,0 +1,258 @@
+package com.julienviet.retrofit.vertx;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.FileSystem;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpClientResponse;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Collects a buffered response body in memory up to a max in-memory size, a larger body is spilled to a temporary
+ * file read through memory mappings. A body can also be written to a file provided by the caller, the collected body
+ * is then empty.
+ *
+ * The file is written with back-pressure: the response is paused while the file write queue is full. The collector
+ * runs on the context of the response.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class ResponseBodyCollector {
+
+  private final Vertx vertx;
+  private final HttpClientResponse response;
+  private final MediaType mediaType;
+  private final long maxInMemorySize;
+  private final long maxSize;
+  private final boolean spill;
+  private final Handler<Throwable> failureHandler;
+  private Buffer memory = Buffer.buffer();
+  private Buffer buffer;
+  private long size;
+  private String path;
+  private AsyncFile file;
+  private boolean opening;
+  private int outstandingWrites;
+  private boolean ended;
+  private boolean failed;
+  private Handler<AsyncResult<ResponseBody>> endHandler;
+
+  /**
+   * @param contentLength the response content length or {@code -1} when unknown
+   * @param maxInMemorySize the max size of a body kept in memory or {@code -1} when unbounded
+   * @param maxSize the max size of a body or {@code -1} when unbounded
+   * @param target the file the body is written to or {@code null}
+   * @param failureHandler called when the body fails
+   */
+  ResponseBodyCollector(Vertx vertx, HttpClientResponse response, MediaType mediaType, long contentLength,
+                        long maxInMemorySize, long maxSize, AsyncFile target, Handler<Throwable> failureHandler) {
+    this.vertx = vertx;
+    this.response = response;
+    this.mediaType = mediaType;
+    this.maxInMemorySize = maxInMemorySize;
+    this.maxSize = maxSize;
+    this.spill = target == null;
+    this.failureHandler = failureHandler;
+    if (target != null) {
+      open(target);
+    } else if (maxInMemorySize >= 0 && contentLength > maxInMemorySize) {
+      // Spill upfront
+      spill();
+    }
+  }
+
+  /**
+   * @return the exception signaling a body larger than {@code maxSize}
+   */
+  static IOException tooLarge(long maxSize) {
+    return new IOException("Response body exceeds the max body size of " + maxSize + " bytes");
+  }
+
+  /**
+   * @return the buffer of a body collected in memory or {@code null} when the body was written to a file
+   */
+  Buffer buffer() {
+    return buffer;
+  }
+
+  void handle(Buffer chunk) {
+    if (failed) {
+      return;
+    }
+    size += chunk.length();
+    if (maxSize >= 0 && size > maxSize) {
+      fail(tooLarge(maxSize));
+      return;
+    }
+    if (file != null) {
+      write(chunk);
+    } else {
+      memory.appendBuffer(chunk);
+      if (!opening && maxInMemorySize >= 0 && size > maxInMemorySize) {
+        spill();
+      }
+    }
+  }
+
+  /**
+   * Called when the response has ended, the {@code handler} is called with the body once it is collected.
+   */
+  void end(Handler<AsyncResult<ResponseBody>> handler) {
+    if (failed) {
+      return;
+    }
+    ended = true;
+    endHandler = handler;
+    if (file == null && !opening) {
+      buffer = memory;
+      memory = null;
+      handler.handle(Future.succeededFuture(new BufferResponseBody(mediaType, buffer)));
+    } else {
+      checkEnd();
+    }
+  }
+
+  private void spill() {
+    opening = true;
+    response.pause();
+    FileSystem fs = vertx.fileSystem();
+    fs.createTempFile("retrofit-vertx", ".body", ar1 -> {
+      if (ar1.failed()) {
+        fail(ar1.cause());
+        return;
+      }
+      path = ar1.result();
+      fs.open(path, new OpenOptions().setWrite(true), ar2 -> {
+        if (ar2.succeeded()) {
+          open(ar2.result());
+        } else {
+          fs.delete(path, ar3 -> {});
+          fail(ar2.cause());
+        }
+      });
+    });
+  }
+
+  private void open(AsyncFile file) {
+    opening = false;
+    this.file = file;
+    file.exceptionHandler(this::fail);
+    if (failed) {
+      // Failed while opening
+      cleanup();
+      return;
+    }
+    Buffer buffered = memory;
+    memory = null;
+    if (buffered.length() > 0) {
+      write(buffered);
+    }
+    if (ended) {
+      checkEnd();
+    } else if (!file.writeQueueFull()) {
+      response.resume();
+    }
+  }
+
+  private void write(Buffer chunk) {
+    outstandingWrites++;
+    file.write(chunk, ar -> {
+      outstandingWrites--;
+      if (ar.failed()) {
+        fail(ar.cause());
+      } else {
+        checkEnd();
+      }
+    });
+    if (file.writeQueueFull()) {
+      response.pause();
+      file.drainHandler(v -> response.resume());
+    }
+  }
+
+  private void checkEnd() {
+    if (failed || !ended || file == null || outstandingWrites > 0) {
+      return;
+    }
+    Handler<AsyncResult<ResponseBody>> handler = endHandler;
+    endHandler = null;
+    if (handler == null) {
+      return;
+    }
+    if (!spill) {
+      file.flush(ar -> {
+        if (ar.succeeded()) {
+          handler.handle(Future.succeededFuture(ResponseBody.create(mediaType, new byte[0])));
+        } else {
+          fail(ar.cause());
+        }
+      });
+      return;
+    }
+    file.close(ar1 -> {
+      if (ar1.failed()) {
+        fail(ar1.cause());
+        return;
+      }
+      vertx.<ResponseBody>executeBlocking(p -> {
+        try {
+          FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+          p.complete(new FileResponseBody(mediaType, channel));
+        } catch (IOException e) {
+          p.fail(e);
+        } finally {
+          delete();
+        }
+      }, false, ar2 -> {
+        if (ar2.succeeded()) {
+          handler.handle(ar2);
+        } else {
+          fail(ar2.cause());
+        }
+      });
+    });
+  }
+
+  /**
+   * Fail the collection, e.g when the response fails, the spilled file is deleted.
+   */
+  void fail(Throwable cause) {
+    if (failed) {
+      return;
+    }
+    failed = true;
+    memory = null;
+    cleanup();
+    failureHandler.handle(cause);
+  }
+
+  private void cleanup() {
+    if (spill && file != null) {
+      file.close(ar -> vertx.executeBlocking(p -> {
+        delete();
+        p.complete();
+      }, false, null));
+    }
+  }
+
+  private void delete() {
+    // The file remains readable through the open channel until it is closed
+    try {
+      Files.deleteIfExists(Paths.get(path));
+    } catch (IOException e) {
+      new File(path).deleteOnExit();
+    }
+  }
+}
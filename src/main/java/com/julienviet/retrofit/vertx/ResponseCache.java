@@ -0,0 +1,285 @@
+package com.julienviet.retrofit.vertx;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import okhttp3.CacheControl;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An HTTP response cache for the {@link VertxCallFactory}, following the caching semantics of RFC 7234:
+ * {@code Cache-Control}, {@code Expires}, conditional requests with {@code ETag} and {@code Last-Modified},
+ * {@code Vary} and {@code stale-while-revalidate}.
+ *
+ * Entries are kept in a size bounded in-heap LRU tier and optionally in a disk tier read through memory mappings
+ * on a worker thread, a body of the disk tier is served from its mapping. Only {@code GET} responses are cached,
+ * a response is served from the cache without using the {@code HttpClient}. A stale response served while it is
+ * revalidated is revalidated by a single request at a time.
+ *
+ * The cache can be shared between factories.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class ResponseCache {
+
+  private final long maxMemorySize;
+  private final DiskCache disk;
+  private final LinkedHashMap<String, CacheEntry> memory = new LinkedHashMap<>(16, 0.75f, true);
+  private long memorySize;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong revalidationCount = new AtomicLong();
+  private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+  public ResponseCache() {
+    this(new ResponseCacheOptions());
+  }
+
+  /**
+   * Create a cache, the disk directory is created when it does not exist.
+   *
+   * @param options the cache options
+   * @throws UncheckedIOException when the disk directory cannot be used
+   */
+  public ResponseCache(ResponseCacheOptions options) {
+    this.maxMemorySize = options.getMaxMemorySize();
+    if (options.getDiskDirectory() != null) {
+      try {
+        disk = new DiskCache(Paths.get(options.getDiskDirectory()), options.getMaxDiskSize());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    } else {
+      disk = null;
+    }
+  }
+
+  /**
+   * @return the number of responses served by the cache without a network request
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return the number of network requests sent without a cached response
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return the number of conditional network requests sent to revalidate a cached response
+   */
+  public long getRevalidationCount() {
+    return revalidationCount.get();
+  }
+
+  /**
+   * Remove all the entries of the cache, this performs blocking IO when the cache has a disk tier.
+   */
+  public void clear() {
+    synchronized (this) {
+      memory.clear();
+      memorySize = 0;
+    }
+    if (disk != null) {
+      disk.clear();
+    }
+  }
+
+  /**
+   * Determine how the cache answers the {@code request}, the disk tier is read on a worker thread of the
+   * {@code context} and the {@code handler} is called on the {@code context}.
+   *
+   * @param context the context running the blocking operations
+   * @param request the request
+   * @param forceNetwork whether the cache must not serve the request, e.g when revalidating in the background
+   * @param handler the handler called with the strategy
+   */
+  void strategy(Context context, Request request, boolean forceNetwork, Handler<Strategy> handler) {
+    String method = request.method();
+    if (!method.equals("GET")) {
+      if (!method.equals("HEAD") && !method.equals("OPTIONS")) {
+        // Unsafe methods invalidate the cached response
+        remove(context, request.url().toString());
+      }
+      handler.handle(new Strategy(request, null, false, false));
+      return;
+    }
+    String url = request.url().toString();
+    CacheEntry entry;
+    synchronized (this) {
+      entry = memory.get(url);
+    }
+    if (entry != null || disk == null) {
+      handler.handle(strategy(request, forceNetwork, entry));
+      return;
+    }
+    context.<CacheEntry>executeBlocking(p -> p.complete(disk.get(url)), false, ar -> {
+      handler.handle(strategy(request, forceNetwork, ar.succeeded() ? ar.result() : null));
+    });
+  }
+
+  private Strategy strategy(Request request, boolean forceNetwork, CacheEntry entry) {
+    if (entry != null && !entry.matches(request)) {
+      entry = null;
+    }
+    CacheControl requestCaching = request.cacheControl();
+    boolean conditional = request.header("If-None-Match") != null || request.header("If-Modified-Since") != null;
+    if (entry != null && !forceNetwork && !conditional && !requestCaching.noCache()) {
+      CacheControl responseCaching = CacheControl.parse(entry.headers);
+      long age = entry.ageMillis(System.currentTimeMillis());
+      long fresh = entry.freshnessLifetimeMillis();
+      if (requestCaching.maxAgeSeconds() != -1) {
+        fresh = Math.min(fresh, TimeUnit.SECONDS.toMillis(requestCaching.maxAgeSeconds()));
+      }
+      long minFresh = requestCaching.minFreshSeconds() != -1 ? TimeUnit.SECONDS.toMillis(requestCaching.minFreshSeconds()) : 0;
+      long maxStale = 0;
+      if (!responseCaching.mustRevalidate() && requestCaching.maxStaleSeconds() != -1) {
+        maxStale = TimeUnit.SECONDS.toMillis(requestCaching.maxStaleSeconds());
+      }
+      if (!responseCaching.noCache()) {
+        if (age + minFresh < fresh + maxStale) {
+          hitCount.incrementAndGet();
+          return new Strategy(null, entry, age >= fresh, false);
+        }
+        if (!responseCaching.mustRevalidate() && age < fresh + entry.staleWhileRevalidateMillis()) {
+          hitCount.incrementAndGet();
+          // A single revalidation at a time, the other hits are served stale until it ends
+          return new Strategy(null, entry, true, revalidating.add(entry.url));
+        }
+      }
+    }
+    if (requestCaching.onlyIfCached()) {
+      return new Strategy(null, null, false, false);
+    }
+    if (entry != null && !conditional) {
+      Request.Builder conditionalRequest = request.newBuilder();
+      String etag = entry.headers.get("ETag");
+      String lastModified = entry.headers.get("Last-Modified");
+      if (etag != null) {
+        conditionalRequest.header("If-None-Match", etag);
+      } else if (lastModified != null) {
+        conditionalRequest.header("If-Modified-Since", lastModified);
+      } else {
+        entry = null;
+      }
+      if (entry != null) {
+        revalidationCount.incrementAndGet();
+        return new Strategy(conditionalRequest.build(), entry, false, false);
+      }
+    }
+    missCount.incrementAndGet();
+    return new Strategy(request, null, false, false);
+  }
+
+  /**
+   * Signal the end of the background revalidation of a {@link Strategy#revalidate} strategy.
+   */
+  void revalidated(String url) {
+    revalidating.remove(url);
+  }
+
+  /**
+   * Store the {@code entry}, the disk tier is written on a worker thread of the {@code context}.
+   */
+  void put(Context context, CacheEntry entry) {
+    synchronized (this) {
+      putInMemory(entry);
+    }
+    if (disk != null) {
+      context.executeBlocking(p -> {
+        disk.put(entry);
+        p.complete();
+      }, false, null);
+    }
+  }
+
+  void remove(Context context, String url) {
+    synchronized (this) {
+      CacheEntry removed = memory.remove(url);
+      if (removed != null) {
+        memorySize -= removed.size();
+      }
+    }
+    if (disk != null) {
+      context.executeBlocking(p -> {
+        disk.remove(url);
+        p.complete();
+      }, false, null);
+    }
+  }
+
+  private void putInMemory(CacheEntry entry) {
+    CacheEntry previous = memory.remove(entry.url);
+    if (previous != null) {
+      memorySize -= previous.size();
+    }
+    long size = entry.size();
+    if (size > maxMemorySize) {
+      return;
+    }
+    memory.put(entry.url, entry);
+    memorySize += size;
+    Iterator<Map.Entry<String, CacheEntry>> it = memory.entrySet().iterator();
+    while (memorySize > maxMemorySize && it.hasNext()) {
+      CacheEntry eldest = it.next().getValue();
+      it.remove();
+      memorySize -= eldest.size();
+    }
+  }
+
+  /**
+   * How a request is answered: when {@link #networkRequest} is {@code null} the request is served by the cache
+   * with the {@link #entry}, otherwise the network request is sent and the {@link #entry} is revalidated
+   * when not {@code null}.
+   */
+  static final class Strategy {
+
+    final Request networkRequest;
+    final CacheEntry entry;
+    final boolean stale;
+    final boolean revalidate;
+
+    private Strategy(Request networkRequest, CacheEntry entry, boolean stale, boolean revalidate) {
+      this.networkRequest = networkRequest;
+      this.entry = entry;
+      this.stale = stale;
+      this.revalidate = revalidate;
+    }
+
+    /**
+     * @return the response of a request served by the cache
+     */
+    Response cacheResponse(Request request) {
+      if (entry == null) {
+        return new Response.Builder()
+          .protocol(Protocol.HTTP_1_1)
+          .request(request)
+          .code(504)
+          .message("Unsatisfiable Request (only-if-cached)")
+          .body(ResponseBody.create(null, new byte[0]))
+          .build();
+      }
+      Response response = entry.response(request);
+      if (stale) {
+        response = response.newBuilder().addHeader("Warning", "110 - \"Response is stale\"").build();
+      }
+      return response;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.julienviet.retrofit.vertx;
+
+/**
+ * Options configuring a {@link ResponseCache}.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class ResponseCacheOptions {
+
+  /**
+   * The default max memory size = 10 MB
+   */
+  public static final long DEFAULT_MAX_MEMORY_SIZE = 10 * 1024 * 1024;
+
+  /**
+   * The default max disk size = 50 MB
+   */
+  public static final long DEFAULT_MAX_DISK_SIZE = 50 * 1024 * 1024;
+
+  private long maxMemorySize;
+  private String diskDirectory;
+  private long maxDiskSize;
+
+  public ResponseCacheOptions() {
+    maxMemorySize = DEFAULT_MAX_MEMORY_SIZE;
+    maxDiskSize = DEFAULT_MAX_DISK_SIZE;
+  }
+
+  public ResponseCacheOptions(ResponseCacheOptions other) {
+    maxMemorySize = other.maxMemorySize;
+    diskDirectory = other.diskDirectory;
+    maxDiskSize = other.maxDiskSize;
+  }
+
+  /**
+   * @return the max size in bytes of the memory tier
+   */
+  public long getMaxMemorySize() {
+    return maxMemorySize;
+  }
+
+  /**
+   * Set the max size in bytes of the in-heap tier, the least recently used entries are evicted beyond this size.
+   *
+   * @param maxMemorySize the size in bytes
+   * @return a reference to this, so the API can be used fluently
+   */
+  public ResponseCacheOptions setMaxMemorySize(long maxMemorySize) {
+    if (maxMemorySize < 0) {
+      throw new IllegalArgumentException("Max memory size must be >= 0");
+    }
+    this.maxMemorySize = maxMemorySize;
+    return this;
+  }
+
+  /**
+   * @return the directory of the disk tier
+   */
+  public String getDiskDirectory() {
+    return diskDirectory;
+  }
+
+  /**
+   * Set the directory of the disk tier, when no directory is set the cache only uses the memory tier.
+   *
+   * @param diskDirectory the directory path
+   * @return a reference to this, so the API can be used fluently
+   */
+  public ResponseCacheOptions setDiskDirectory(String diskDirectory) {
+    this.diskDirectory = diskDirectory;
+    return this;
+  }
+
+  /**
+   * @return the max size in bytes of the disk tier
+   */
+  public long getMaxDiskSize() {
+    return maxDiskSize;
+  }
+
+  /**
+   * Set the max size in bytes of the disk tier, the least recently used entries are deleted beyond this size.
+   *
+   * @param maxDiskSize the size in bytes
+   * @return a reference to this, so the API can be used fluently
+   */
+  public ResponseCacheOptions setMaxDiskSize(long maxDiskSize) {
+    if (maxDiskSize < 0) {
+      throw new IllegalArgumentException("Max disk size must be >= 0");
+    }
+    this.maxDiskSize = maxDiskSize;
+    return this;
+  }
+}
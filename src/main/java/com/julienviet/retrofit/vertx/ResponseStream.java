@@ -0,0 +1,394 @@
+package com.julienviet.retrofit.vertx;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.core.streams.ReadStream;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Converter;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A stream of the elements of a response body decoded as they are received: the body is decoded as server-sent
+ * events when its content type is {@code text/event-stream} and as newline delimited records otherwise, e.g
+ * {@code application/x-ndjson}. Each record or event data is converted to an element with a Retrofit converter, the
+ * stream fails when one exceeds the max record size.
+ *
+ * The call is sent when the stream handler is set, the stream demand is propagated to the HTTP response which is
+ * paused when no element is requested.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class ResponseStream<T> implements ReadStream<T>, Callback<ResponseBody> {
+
+  private final Call<ResponseBody> call;
+  private final Converter<ResponseBody, T> converter;
+  private final int maxRecordSize;
+  private Handler<T> handler;
+  private Handler<Void> endHandler;
+  private Handler<Throwable> exceptionHandler;
+  private long demand = Long.MAX_VALUE;
+  private RecordParser parser;
+  private MediaType contentType;
+  private boolean events;
+  private Buffer data;
+  private boolean sent;
+  private boolean done;
+
+  /**
+   * @param converter the element converter or {@code null} for {@link Buffer} elements
+   * @param maxRecordSize the max size of a line or event data or {@code -1} when unbounded
+   */
+  ResponseStream(Call<ResponseBody> call, Converter<ResponseBody, T> converter, int maxRecordSize) {
+    this.call = call;
+    this.converter = converter;
+    this.maxRecordSize = maxRecordSize;
+  }
+
+  @Override
+  public ReadStream<T> exceptionHandler(Handler<Throwable> handler) {
+    exceptionHandler = handler;
+    return this;
+  }
+
+  @Override
+  public ReadStream<T> handler(Handler<T> handler) {
+    this.handler = handler;
+    if (handler != null && !sent) {
+      sent = true;
+      call.enqueue(this);
+    }
+    return this;
+  }
+
+  @Override
+  public ReadStream<T> pause() {
+    demand = 0L;
+    if (parser != null) {
+      parser.pause();
+    }
+    return this;
+  }
+
+  @Override
+  public ReadStream<T> resume() {
+    return fetch(Long.MAX_VALUE);
+  }
+
+  @Override
+  public ReadStream<T> fetch(long amount) {
+    if (amount < 0L) {
+      throw new IllegalArgumentException("Invalid amount " + amount);
+    }
+    demand += amount;
+    if (demand < 0L) {
+      demand = Long.MAX_VALUE;
+    }
+    if (parser != null && demand > 0L) {
+      parser.resume();
+    }
+    return this;
+  }
+
+  @Override
+  public ReadStream<T> endHandler(Handler<Void> handler) {
+    endHandler = handler;
+    return this;
+  }
+
+  @Override
+  public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+    if (!response.isSuccessful()) {
+      handleException(new HttpException(response));
+      return;
+    }
+    ResponseBody body = response.body();
+    if (body == null) {
+      handleEnd();
+      return;
+    }
+    contentType = body.contentType();
+    events = contentType != null && contentType.type().equals("text") && contentType.subtype().equals("event-stream");
+    // Retrofit wraps the body, the streamed body is found in the response request tags
+    StreamingResponseBody streamingBody = response.raw().request().tag(StreamingResponseBody.class);
+    ReadStream<Buffer> stream;
+    if (streamingBody != null) {
+      stream = streamingBody.stream();
+    } else {
+      // Not streamed by a VertxCallFactory
+      try {
+        stream = new BufferStream(Buffer.buffer(body.bytes()));
+      } catch (IOException e) {
+        handleException(e);
+        return;
+      }
+    }
+    if (maxRecordSize > 0) {
+      stream = new LineLimitStream(stream);
+    }
+    parser = RecordParser.newDelimited("\n", stream);
+    parser.exceptionHandler(this::handleException);
+    parser.endHandler(v -> handleEnd());
+    if (demand == 0L) {
+      parser.pause();
+    }
+    parser.handler(this::handleRecord);
+  }
+
+  @Override
+  public void onFailure(Call<ResponseBody> call, Throwable t) {
+    handleException(t);
+  }
+
+  private void handleRecord(Buffer record) {
+    if (done) {
+      return;
+    }
+    int len = record.length();
+    if (len > 0 && record.getByte(len - 1) == '\r') {
+      record = record.getBuffer(0, len - 1);
+    }
+    if (maxRecordSize > 0 && record.length() > maxRecordSize) {
+      tooLarge();
+    } else if (events) {
+      handleEventLine(record);
+    } else if (record.length() > 0) {
+      emit(record);
+    }
+  }
+
+  /**
+   * Handle a line of a server-sent events stream, only the data of the events is retained.
+   */
+  private void handleEventLine(Buffer line) {
+    if (line.length() == 0) {
+      // Dispatch the event
+      Buffer event = data;
+      if (event != null) {
+        data = null;
+        emit(event);
+      }
+      return;
+    }
+    String s = line.toString(StandardCharsets.UTF_8);
+    int idx = s.indexOf(':');
+    if (idx == 0) {
+      // Comment
+      return;
+    }
+    String field = idx < 0 ? s : s.substring(0, idx);
+    if (field.equals("data")) {
+      String value = "";
+      if (idx >= 0) {
+        value = s.substring(s.length() > idx + 1 && s.charAt(idx + 1) == ' ' ? idx + 2 : idx + 1);
+      }
+      if (data == null) {
+        data = Buffer.buffer();
+      } else {
+        data.appendByte((byte) '\n');
+      }
+      data.appendString(value);
+      if (maxRecordSize > 0 && data.length() > maxRecordSize) {
+        tooLarge();
+      }
+    }
+  }
+
+  /**
+   * Fail the stream with a record larger than the max record size and discard the remaining of the response.
+   */
+  private void tooLarge() {
+    handleException(new IOException("Record exceeds the max record size of " + maxRecordSize + " bytes"));
+    call.cancel();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void emit(Buffer record) {
+    T element;
+    try {
+      element = converter != null ? converter.convert(new BufferResponseBody(contentType, record)) : (T) record;
+    } catch (Exception e) {
+      handleException(e);
+      // Discard the remaining of the response
+      call.cancel();
+      return;
+    }
+    if (demand != Long.MAX_VALUE && --demand == 0L) {
+      parser.pause();
+    }
+    Handler<T> h = handler;
+    if (h != null) {
+      h.handle(element);
+    }
+  }
+
+  private void handleEnd() {
+    if (done) {
+      return;
+    }
+    // An incomplete event is not dispatched
+    done = true;
+    if (endHandler != null) {
+      endHandler.handle(null);
+    }
+  }
+
+  private void handleException(Throwable cause) {
+    if (done) {
+      return;
+    }
+    done = true;
+    if (exceptionHandler != null) {
+      exceptionHandler.handle(cause);
+    }
+  }
+
+  /**
+   * Checks the line in progress of the chunks before they reach the parser: the parser buffers the complete lines not
+   * yet emitted along with it, only the bytes after the last delimiter count against the max record size.
+   */
+  private class LineLimitStream implements ReadStream<Buffer> {
+
+    private final ReadStream<Buffer> stream;
+    private long pending;
+
+    LineLimitStream(ReadStream<Buffer> stream) {
+      this.stream = stream;
+    }
+
+    @Override
+    public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+      stream.exceptionHandler(handler);
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+      if (handler == null) {
+        stream.handler(null);
+      } else {
+        stream.handler(chunk -> {
+          if (!done && check(chunk)) {
+            handler.handle(chunk);
+          }
+        });
+      }
+      return this;
+    }
+
+    private boolean check(Buffer chunk) {
+      int len = chunk.length();
+      int idx = len - 1;
+      while (idx >= 0 && chunk.getByte(idx) != '\n') {
+        idx--;
+      }
+      pending = idx < 0 ? pending + len : len - idx - 1;
+      // Account for the carriage return ending a line
+      if (pending > maxRecordSize + 1L) {
+        tooLarge();
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    public ReadStream<Buffer> pause() {
+      stream.pause();
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> resume() {
+      stream.resume();
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> fetch(long amount) {
+      stream.fetch(amount);
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> endHandler(Handler<Void> handler) {
+      stream.endHandler(handler);
+      return this;
+    }
+  }
+
+  /**
+   * A stream of a body that was not streamed.
+   */
+  private static class BufferStream implements ReadStream<Buffer> {
+
+    private Buffer buffer;
+    private Handler<Buffer> handler;
+    private Handler<Void> endHandler;
+    private boolean paused;
+    private boolean ended;
+
+    BufferStream(Buffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+      this.handler = handler;
+      deliver();
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> pause() {
+      paused = true;
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> resume() {
+      return fetch(Long.MAX_VALUE);
+    }
+
+    @Override
+    public ReadStream<Buffer> fetch(long amount) {
+      paused = false;
+      deliver();
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> endHandler(Handler<Void> handler) {
+      endHandler = handler;
+      return this;
+    }
+
+    private void deliver() {
+      if (handler == null || paused) {
+        return;
+      }
+      if (buffer != null) {
+        Buffer b = buffer;
+        buffer = null;
+        handler.handle(b);
+      }
+      if (!paused && !ended) {
+        ended = true;
+        if (endHandler != null) {
+          endHandler.handle(null);
+        }
+      }
+    }
+  }
+}
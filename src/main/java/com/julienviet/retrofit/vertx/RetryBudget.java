@@ -0,0 +1,32 @@
+package com.julienviet.retrofit.vertx;
+
+/**
+ * A token bucket limiting the retries and hedges: calls deposit a fraction of token and each retry or hedge
+ * withdraws a token.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class RetryBudget {
+
+  private final double ratio;
+  private final double maxTokens;
+  private double tokens;
+
+  RetryBudget(double ratio, int maxTokens) {
+    this.ratio = ratio;
+    this.maxTokens = maxTokens;
+    this.tokens = maxTokens;
+  }
+
+  synchronized void deposit() {
+    tokens = Math.min(maxTokens, tokens + ratio);
+  }
+
+  synchronized boolean tryWithdraw() {
+    if (tokens >= 1) {
+      tokens -= 1;
+      return true;
+    }
+    return false;
+  }
+}
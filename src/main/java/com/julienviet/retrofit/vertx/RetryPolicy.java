@@ -0,0 +1,224 @@
+package com.julienviet.retrofit.vertx;
+
+/**
+ * The retry and hedging policy of the idempotent calls of a {@link VertxCallFactory}.
+ *
+ * A call failing to obtain a connection is retried, a hedged call sends a second request when the response takes
+ * longer than a percentile of the latencies observed for the service method, the first response wins and the other
+ * request is cancelled.
+ *
+ * Retries and hedges are limited by a token bucket budget: each call deposits {@link #setBudgetRatio ratio} token and
+ * each retry or hedge withdraws a token, so they cannot amplify an outage.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class RetryPolicy {
+
+  /**
+   * The default max retries = 2
+   */
+  public static final int DEFAULT_MAX_RETRIES = 2;
+
+  /**
+   * The default retry backoff = 0 ms
+   */
+  public static final long DEFAULT_RETRY_BACKOFF = 0;
+
+  /**
+   * The default budget ratio = 0.1, i.e a retry or a hedge for 10 calls
+   */
+  public static final double DEFAULT_BUDGET_RATIO = 0.1;
+
+  /**
+   * The default budget max tokens = 10
+   */
+  public static final int DEFAULT_BUDGET_MAX_TOKENS = 10;
+
+  /**
+   * The default hedging = false
+   */
+  public static final boolean DEFAULT_HEDGING = false;
+
+  /**
+   * The default hedging percentile = 95
+   */
+  public static final double DEFAULT_HEDGING_PERCENTILE = 95;
+
+  /**
+   * The default hedging min delay = 10 ms
+   */
+  public static final long DEFAULT_HEDGING_MIN_DELAY = 10;
+
+  private int maxRetries;
+  private long retryBackoff;
+  private double budgetRatio;
+  private int budgetMaxTokens;
+  private boolean hedging;
+  private double hedgingPercentile;
+  private long hedgingMinDelay;
+
+  public RetryPolicy() {
+    maxRetries = DEFAULT_MAX_RETRIES;
+    retryBackoff = DEFAULT_RETRY_BACKOFF;
+    budgetRatio = DEFAULT_BUDGET_RATIO;
+    budgetMaxTokens = DEFAULT_BUDGET_MAX_TOKENS;
+    hedging = DEFAULT_HEDGING;
+    hedgingPercentile = DEFAULT_HEDGING_PERCENTILE;
+    hedgingMinDelay = DEFAULT_HEDGING_MIN_DELAY;
+  }
+
+  public RetryPolicy(RetryPolicy other) {
+    maxRetries = other.maxRetries;
+    retryBackoff = other.retryBackoff;
+    budgetRatio = other.budgetRatio;
+    budgetMaxTokens = other.budgetMaxTokens;
+    hedging = other.hedging;
+    hedgingPercentile = other.hedgingPercentile;
+    hedgingMinDelay = other.hedgingMinDelay;
+  }
+
+  /**
+   * @return the max number of retries of a call
+   */
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * Set the max number of times a call failing to obtain a connection is retried.
+   *
+   * @param maxRetries the max number of retries
+   * @return a reference to this, so the API can be used fluently
+   */
+  public RetryPolicy setMaxRetries(int maxRetries) {
+    if (maxRetries < 0) {
+      throw new IllegalArgumentException("Max retries must be >= 0");
+    }
+    this.maxRetries = maxRetries;
+    return this;
+  }
+
+  /**
+   * @return the retry backoff
+   */
+  public long getRetryBackoff() {
+    return retryBackoff;
+  }
+
+  /**
+   * Set the time to wait before retrying a call.
+   *
+   * @param retryBackoff the backoff in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public RetryPolicy setRetryBackoff(long retryBackoff) {
+    if (retryBackoff < 0) {
+      throw new IllegalArgumentException("Retry backoff must be >= 0");
+    }
+    this.retryBackoff = retryBackoff;
+    return this;
+  }
+
+  /**
+   * @return the budget ratio
+   */
+  public double getBudgetRatio() {
+    return budgetRatio;
+  }
+
+  /**
+   * Set the amount of token each call deposits in the budget.
+   *
+   * @param budgetRatio the ratio
+   * @return a reference to this, so the API can be used fluently
+   */
+  public RetryPolicy setBudgetRatio(double budgetRatio) {
+    if (budgetRatio < 0) {
+      throw new IllegalArgumentException("Budget ratio must be >= 0");
+    }
+    this.budgetRatio = budgetRatio;
+    return this;
+  }
+
+  /**
+   * @return the budget max tokens
+   */
+  public int getBudgetMaxTokens() {
+    return budgetMaxTokens;
+  }
+
+  /**
+   * Set the max number of tokens of the budget, the budget is initially full.
+   *
+   * @param budgetMaxTokens the max number of tokens
+   * @return a reference to this, so the API can be used fluently
+   */
+  public RetryPolicy setBudgetMaxTokens(int budgetMaxTokens) {
+    if (budgetMaxTokens < 0) {
+      throw new IllegalArgumentException("Budget max tokens must be >= 0");
+    }
+    this.budgetMaxTokens = budgetMaxTokens;
+    return this;
+  }
+
+  /**
+   * @return whether calls are hedged
+   */
+  public boolean isHedging() {
+    return hedging;
+  }
+
+  /**
+   * Set whether calls are hedged, a service method is hedged once the latencies of {@code 20} of its calls were
+   * observed.
+   *
+   * @param hedging whether to hedge calls
+   * @return a reference to this, so the API can be used fluently
+   */
+  public RetryPolicy setHedging(boolean hedging) {
+    this.hedging = hedging;
+    return this;
+  }
+
+  /**
+   * @return the hedging percentile
+   */
+  public double getHedgingPercentile() {
+    return hedgingPercentile;
+  }
+
+  /**
+   * Set the percentile of the observed latencies after which a hedge request is sent.
+   *
+   * @param hedgingPercentile the percentile between {@code 0} and {@code 100}
+   * @return a reference to this, so the API can be used fluently
+   */
+  public RetryPolicy setHedgingPercentile(double hedgingPercentile) {
+    if (hedgingPercentile < 0 || hedgingPercentile > 100) {
+      throw new IllegalArgumentException("Hedging percentile must be between 0 and 100");
+    }
+    this.hedgingPercentile = hedgingPercentile;
+    return this;
+  }
+
+  /**
+   * @return the hedging min delay
+   */
+  public long getHedgingMinDelay() {
+    return hedgingMinDelay;
+  }
+
+  /**
+   * Set the minimum time to wait before sending a hedge request.
+   *
+   * @param hedgingMinDelay the delay in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public RetryPolicy setHedgingMinDelay(long hedgingMinDelay) {
+    if (hedgingMinDelay < 0) {
+      throw new IllegalArgumentException("Hedging min delay must be >= 0");
+    }
+    this.hedgingMinDelay = hedgingMinDelay;
+    return this;
+  }
+}
@@ -0,0 +1,362 @@
+package com.julienviet.retrofit.vertx;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.streams.ReadStream;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A response body reading the {@link HttpClientResponse} stream as the body source is consumed.
+ *
+ * The response is paused when the amount of buffered data reaches the high watermark and resumed
+ * when the consumer has read enough of it. The body can also be consumed as a {@link ReadStream} of buffers, the
+ * consumer demand is then propagated to the response.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+class StreamingResponseBody extends ResponseBody {
+
+  static final int HIGH_WATERMARK = 64 * 1024;
+  static final int LOW_WATERMARK = 16 * 1024;
+
+  private final Context context;
+  private final HttpClientResponse response;
+  private final MediaType contentType;
+  private final long contentLength;
+  private final ArrayDeque<ByteBuf> pending = new ArrayDeque<>();
+  private final Timeout timeout = new Timeout();
+  private final Handler<Void> endHandler;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition readable = lock.newCondition();
+  private BufferedSource source;
+  private int pendingBytes;
+  private long bytesReceived;
+  private boolean paused;
+  private boolean ended;
+  private boolean closed;
+  private Throwable failure;
+  private Handler<Buffer> streamHandler;
+  private Handler<Void> streamEndHandler;
+  private Handler<Throwable> streamExceptionHandler;
+  private boolean streamPaused;
+
+  /**
+   * @param idleTimeout the maximum time in ms a read waits for data
+   * @param endHandler called when the response has been entirely received or the body is released
+   */
+  StreamingResponseBody(Context context, HttpClientResponse response, MediaType contentType, long contentLength,
+                        long idleTimeout, Handler<Void> endHandler) {
+    this.context = context;
+    this.response = response;
+    this.contentType = contentType;
+    this.contentLength = contentLength;
+    this.endHandler = endHandler;
+    timeout.timeout(idleTimeout, TimeUnit.MILLISECONDS);
+    response.handler(this::handleChunk);
+    response.endHandler(v -> handleEnd());
+    response.exceptionHandler(this::handleFailure);
+  }
+
+  private void handleChunk(Buffer chunk) {
+    Handler<Buffer> handler;
+    lock.lock();
+    try {
+      if (closed || failure != null) {
+        return;
+      }
+      bytesReceived += chunk.length();
+      handler = streamHandler;
+      if (handler == null) {
+        ByteBuf buf = chunk.getByteBuf();
+        pending.add(buf);
+        pendingBytes += buf.readableBytes();
+        if (!paused && pendingBytes >= HIGH_WATERMARK) {
+          paused = true;
+          response.pause();
+        }
+        readable.signalAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (handler != null) {
+      handler.handle(chunk);
+    }
+  }
+
+  private void handleEnd() {
+    Handler<Void> handler;
+    lock.lock();
+    try {
+      ended = true;
+      handler = streamHandler != null ? streamEndHandler : null;
+      readable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    endHandler.handle(null);
+    if (handler != null) {
+      handler.handle(null);
+    }
+  }
+
+  private void handleFailure(Throwable cause) {
+    Handler<Throwable> handler = null;
+    lock.lock();
+    try {
+      if (failure == null) {
+        failure = cause;
+        handler = streamHandler != null ? streamExceptionHandler : null;
+      }
+      readable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    endHandler.handle(null);
+    if (handler != null) {
+      handler.handle(cause);
+    }
+  }
+
+  /**
+   * @return a stream of the body buffers instead of the body source, this must be called on the call context
+   */
+  ReadStream<Buffer> stream() {
+    return new BodyStream();
+  }
+
+  /**
+   * @return the number of bytes received so far
+   */
+  long bytesReceived() {
+    lock.lock();
+    try {
+      return bytesReceived;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public MediaType contentType() {
+    return contentType;
+  }
+
+  @Override
+  public long contentLength() {
+    return contentLength;
+  }
+
+  @Override
+  public BufferedSource source() {
+    lock.lock();
+    try {
+      if (source == null) {
+        source = Okio.buffer(new BodySource());
+      }
+      return source;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private long read(okio.Buffer sink, long byteCount) throws IOException {
+    lock.lock();
+    try {
+      return doRead(sink, byteCount);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private long doRead(okio.Buffer sink, long byteCount) throws IOException {
+    while (pending.isEmpty()) {
+      if (failure != null) {
+        throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+      }
+      if (closed) {
+        throw new IOException("closed");
+      }
+      if (ended) {
+        return -1;
+      }
+      if (Context.isOnEventLoopThread()) {
+        throw new IllegalStateException("Cannot block the event loop waiting for the response body");
+      }
+      Timeouts.await(readable, timeout);
+    }
+    ByteBuf head = pending.peek();
+    int amount = (int) Math.min(byteCount, head.readableBytes());
+    sink.write(head.nioBuffer(head.readerIndex(), amount));
+    head.skipBytes(amount);
+    if (!head.isReadable()) {
+      pending.poll();
+    }
+    pendingBytes -= amount;
+    if (paused && pendingBytes <= LOW_WATERMARK) {
+      paused = false;
+      context.runOnContext(v -> response.resume());
+    }
+    return amount;
+  }
+
+  private void closeBody() {
+    release(null);
+  }
+
+  /**
+   * Fails the body, a thread reading the body is released and the remaining of the stream is discarded.
+   *
+   * @param cause the failure
+   */
+  void fail(Throwable cause) {
+    release(cause);
+  }
+
+  private void release(Throwable cause) {
+    boolean reset;
+    lock.lock();
+    try {
+      if (closed || failure != null) {
+        return;
+      }
+      if (cause != null) {
+        failure = cause;
+      } else {
+        closed = true;
+      }
+      pending.clear();
+      pendingBytes = 0;
+      reset = !ended;
+      readable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    if (reset) {
+      // The remaining of the stream is not going to be consumed
+      context.runOnContext(v -> response.request().reset());
+      endHandler.handle(null);
+    }
+  }
+
+  /**
+   * Deliver the buffered data to the stream {@code handler} and then the data as it is received.
+   */
+  private void startStream(Handler<Buffer> handler) {
+    List<Buffer> buffered = new ArrayList<>(pending.size());
+    boolean resume;
+    boolean end;
+    Throwable cause;
+    lock.lock();
+    try {
+      if (streamHandler != null) {
+        throw new IllegalStateException("The body is already streamed");
+      }
+      streamHandler = handler;
+      for (ByteBuf buf : pending) {
+        buffered.add(Buffer.buffer(buf));
+      }
+      pending.clear();
+      pendingBytes = 0;
+      resume = paused;
+      paused = false;
+      end = ended;
+      cause = failure;
+    } finally {
+      lock.unlock();
+    }
+    for (Buffer buffer : buffered) {
+      handler.handle(buffer);
+    }
+    if (cause != null) {
+      if (streamExceptionHandler != null) {
+        streamExceptionHandler.handle(cause);
+      }
+    } else if (end) {
+      if (streamEndHandler != null) {
+        streamEndHandler.handle(null);
+      }
+    } else if (resume && !streamPaused) {
+      response.resume();
+    }
+  }
+
+  private class BodyStream implements ReadStream<Buffer> {
+
+    @Override
+    public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+      streamExceptionHandler = handler;
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+      if (handler != null) {
+        startStream(handler);
+      }
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> pause() {
+      streamPaused = true;
+      response.pause();
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> resume() {
+      return fetch(Long.MAX_VALUE);
+    }
+
+    @Override
+    public ReadStream<Buffer> fetch(long amount) {
+      streamPaused = false;
+      response.fetch(amount);
+      return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> endHandler(Handler<Void> handler) {
+      streamEndHandler = handler;
+      return this;
+    }
+  }
+
+  private class BodySource implements Source {
+
+    @Override
+    public long read(okio.Buffer sink, long byteCount) throws IOException {
+      if (byteCount < 0) {
+        throw new IllegalArgumentException("byteCount < 0: " + byteCount);
+      }
+      return StreamingResponseBody.this.read(sink, byteCount);
+    }
+
+    @Override
+    public Timeout timeout() {
+      return timeout;
+    }
+
+    @Override
+    public void close() {
+      closeBody();
+    }
+  }
+}
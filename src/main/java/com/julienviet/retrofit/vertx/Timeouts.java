@@ -0,0 +1,48 @@
+package com.julienviet.retrofit.vertx;
+
+import okio.Timeout;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+final class Timeouts {
+
+  private Timeouts() {
+  }
+
+  /**
+   * Like {@link Timeout#waitUntilNotified(Object)} but waits on a lock {@link Condition} instead of an object monitor,
+   * so a virtual thread waiting does not pin its carrier thread.
+   *
+   * @param condition the condition to wait for, its lock must be held
+   * @param timeout the timeout
+   * @throws InterruptedIOException when the timeout is reached or the thread is interrupted
+   */
+  static void await(Condition condition, Timeout timeout) throws InterruptedIOException {
+    try {
+      boolean hasDeadline = timeout.hasDeadline();
+      long timeoutNanos = timeout.timeoutNanos();
+      if (!hasDeadline && timeoutNanos == 0L) {
+        condition.await();
+        return;
+      }
+      long waitNanos;
+      if (hasDeadline && timeoutNanos != 0) {
+        waitNanos = Math.min(timeoutNanos, timeout.deadlineNanoTime() - System.nanoTime());
+      } else if (hasDeadline) {
+        waitNanos = timeout.deadlineNanoTime() - System.nanoTime();
+      } else {
+        waitNanos = timeoutNanos;
+      }
+      if (waitNanos <= 0L || condition.awaitNanos(waitNanos) <= 0L) {
+        throw new InterruptedIOException("timeout");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted");
+    }
+  }
+}
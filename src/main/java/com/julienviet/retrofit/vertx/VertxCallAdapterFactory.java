@@ -0,0 +1,175 @@
+package com.julienviet.retrofit.vertx;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.Converter;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.Streaming;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * A Retrofit call adapter factory for service methods returning a Vert.x {@link Future} or {@link ReadStream}.
+ *
+ * A {@code Future<T>} is completed with the response body when the response is successful and failed with
+ * an {@link HttpException} otherwise, a {@code Future<Response<T>>} is completed with the response.
+ *
+ * A {@code ReadStream<T>} emits the elements of a newline delimited or server-sent events response body as they are
+ * received, the service method must be annotated with {@link Streaming}. Each element is converted with the Retrofit
+ * converter of {@code T}, a {@code ReadStream<Buffer>} emits the raw elements. The stream fails when a line or an
+ * event data exceeds the max record size of the factory.
+ *
+ * When used with the {@link VertxCallFactory}, the future is completed and the stream is called on the context of
+ * the service method caller.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class VertxCallAdapterFactory extends CallAdapter.Factory {
+
+  /**
+   * The default max size of a {@link ReadStream} element = -1 (unbounded)
+   */
+  public static final int DEFAULT_MAX_RECORD_SIZE = -1;
+
+  public static VertxCallAdapterFactory create() {
+    return new VertxCallAdapterFactory(DEFAULT_MAX_RECORD_SIZE);
+  }
+
+  /**
+   * @param maxRecordSize the max size in bytes of a line or event data decoded by a {@link ReadStream}, the stream
+   *                      fails when a larger one is received, {@code -1} does not limit the size
+   * @return a factory limiting the size of the {@link ReadStream} elements
+   */
+  public static VertxCallAdapterFactory create(int maxRecordSize) {
+    if (maxRecordSize < 1 && maxRecordSize != -1) {
+      throw new IllegalArgumentException("Max record size must be > 0 or -1");
+    }
+    return new VertxCallAdapterFactory(maxRecordSize);
+  }
+
+  private final int maxRecordSize;
+
+  private VertxCallAdapterFactory(int maxRecordSize) {
+    this.maxRecordSize = maxRecordSize;
+  }
+
+  @Override
+  public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+    if (getRawType(returnType) == ReadStream.class) {
+      return readStreamAdapter(returnType, annotations, retrofit);
+    }
+    if (getRawType(returnType) != Future.class) {
+      return null;
+    }
+    if (!(returnType instanceof ParameterizedType)) {
+      throw new IllegalStateException("Future return type must be parameterized as Future<Foo> or Future<? extends Foo>");
+    }
+    Type type = getParameterUpperBound(0, (ParameterizedType) returnType);
+    if (getRawType(type) == Response.class) {
+      if (!(type instanceof ParameterizedType)) {
+        throw new IllegalStateException("Response must be parameterized as Response<Foo> or Response<? extends Foo>");
+      }
+      return new FutureCallAdapter<>(getParameterUpperBound(0, (ParameterizedType) type), true);
+    }
+    return new FutureCallAdapter<>(type, false);
+  }
+
+  private CallAdapter<?, ?> readStreamAdapter(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+    if (!(returnType instanceof ParameterizedType)) {
+      throw new IllegalStateException("ReadStream return type must be parameterized as ReadStream<Foo> or ReadStream<? extends Foo>");
+    }
+    boolean streaming = false;
+    for (Annotation annotation : annotations) {
+      streaming |= annotation instanceof Streaming;
+    }
+    if (!streaming) {
+      throw new IllegalStateException("ReadStream service methods must be annotated with @Streaming");
+    }
+    Type type = getParameterUpperBound(0, (ParameterizedType) returnType);
+    Converter<ResponseBody, ?> converter = type == Buffer.class ? null : retrofit.responseBodyConverter(type, annotations);
+    return new ReadStreamCallAdapter<>(converter, maxRecordSize);
+  }
+
+  private static class ReadStreamCallAdapter<T> implements CallAdapter<ResponseBody, ReadStream<T>> {
+
+    private final Converter<ResponseBody, T> converter;
+    private final int maxRecordSize;
+
+    ReadStreamCallAdapter(Converter<ResponseBody, T> converter, int maxRecordSize) {
+      this.converter = converter;
+      this.maxRecordSize = maxRecordSize;
+    }
+
+    @Override
+    public Type responseType() {
+      return ResponseBody.class;
+    }
+
+    @Override
+    public ReadStream<T> adapt(Call<ResponseBody> call) {
+      return new ResponseStream<>(call, converter, maxRecordSize);
+    }
+  }
+
+  private static class FutureCallAdapter<R> implements CallAdapter<R, Future<?>> {
+
+    private final Type responseType;
+    private final boolean wrapResponse;
+
+    FutureCallAdapter(Type responseType, boolean wrapResponse) {
+      this.responseType = responseType;
+      this.wrapResponse = wrapResponse;
+    }
+
+    @Override
+    public Type responseType() {
+      return responseType;
+    }
+
+    @Override
+    public Future<?> adapt(Call<R> call) {
+      FutureCallback<R> callback = new FutureCallback<>(wrapResponse);
+      call.enqueue(callback);
+      return callback.promise.future();
+    }
+  }
+
+  /**
+   * The callback completing the promise of the future returned by the adapter.
+   */
+  private static class FutureCallback<R> implements Callback<R> {
+
+    private final Promise<Object> promise = Promise.promise();
+    private final boolean wrapResponse;
+
+    FutureCallback(boolean wrapResponse) {
+      this.wrapResponse = wrapResponse;
+    }
+
+    @Override
+    public void onResponse(Call<R> call, Response<R> response) {
+      if (wrapResponse) {
+        promise.tryComplete(response);
+      } else if (response.isSuccessful()) {
+        promise.tryComplete(response.body());
+      } else {
+        promise.tryFail(new HttpException(response));
+      }
+    }
+
+    @Override
+    public void onFailure(Call<R> call, Throwable t) {
+      promise.tryFail(t);
+    }
+  }
+}
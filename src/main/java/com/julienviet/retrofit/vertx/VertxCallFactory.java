@@ -1,46 +1,430 @@
 package com.julienviet.retrofit.vertx;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
 import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.ReadStream;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.Connection;
 import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
 import okhttp3.MediaType;
 import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
-import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.InflaterSource;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
 import okio.Timeout;
+import retrofit2.Invocation;
+import retrofit2.http.Streaming;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Inflater;
 
 /**
+ * A Retrofit call factory performing the calls with a Vert.x {@link HttpClient}.
+ *
+ * The factory either uses a single client or, when it is created with {@link HttpClientOptions}, a client per event loop:
+ * a call uses the client of the event loop of its context so the request, the response and the callback happen on the
+ * same thread without contending on a shared connection pool.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 public class VertxCallFactory implements Call.Factory {
 
+  private static final Logger log = LoggerFactory.getLogger(VertxCallFactory.class);
+
+  private static final int HEDGING_MIN_SAMPLES = 20;
+
+  private static final Object SHARED = new Object();
+
+  private volatile Vertx vertx;
   private final HttpClient client;
+  private final HttpClientOptions clientOptions;
+  private final ConcurrentMap<Object, HttpClient> clients = new ConcurrentHashMap<>();
+  private final VertxCallFactoryOptions options;
+  private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+  private final RetryBudget retryBudget;
+  private final ConcurrentMap<Method, Histogram> latencies = new ConcurrentHashMap<>();
+  private final Histogram unknownLatencies = new Histogram();
+  private final ConcurrentMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
 
+  /**
+   * Create a factory using the {@code client}, the Vert.x instance is the one of the current context or of the
+   * context of the first call.
+   *
+   * @deprecated the factory cannot be called from a non Vert.x thread before a call was sent from a Vert.x thread,
+   *             use {@link #VertxCallFactory(Vertx, HttpClient)} instead
+   */
+  @Deprecated
   public VertxCallFactory(HttpClient client) {
+    this(client, new VertxCallFactoryOptions());
+  }
+
+  /**
+   * Like {@link #VertxCallFactory(HttpClient)} with factory {@code options}.
+   *
+   * @deprecated use {@link #VertxCallFactory(Vertx, HttpClient, VertxCallFactoryOptions)} instead
+   */
+  @Deprecated
+  public VertxCallFactory(HttpClient client, VertxCallFactoryOptions options) {
+    this(Vertx.currentContext() != null ? Vertx.currentContext().owner() : null, client, options);
+  }
+
+  /**
+   * Create a factory using the {@code client} created by {@code vertx}.
+   *
+   * @param vertx the Vert.x instance
+   * @param client the client
+   */
+  public VertxCallFactory(Vertx vertx, HttpClient client) {
+    this(vertx, client, new VertxCallFactoryOptions());
+  }
+
+  /**
+   * Like {@link #VertxCallFactory(Vertx, HttpClient)} with factory {@code options}.
+   */
+  public VertxCallFactory(Vertx vertx, HttpClient client, VertxCallFactoryOptions options) {
+    this.vertx = vertx;
     this.client = client;
+    this.clientOptions = null;
+    this.options = new VertxCallFactoryOptions(options);
+    this.retryBudget = retryBudget(this.options);
+  }
+
+  /**
+   * Create a factory using a client per event loop, the clients are created with the {@code clientOptions} when
+   * the first call of an event loop is sent.
+   *
+   * @param vertx the Vert.x instance
+   * @param clientOptions the options of the clients
+   */
+  public VertxCallFactory(Vertx vertx, HttpClientOptions clientOptions) {
+    this(vertx, clientOptions, new VertxCallFactoryOptions());
+  }
+
+  /**
+   * Like {@link #VertxCallFactory(Vertx, HttpClientOptions)} with factory {@code options}.
+   */
+  public VertxCallFactory(Vertx vertx, HttpClientOptions clientOptions, VertxCallFactoryOptions options) {
+    this.vertx = vertx;
+    this.client = null;
+    this.clientOptions = new HttpClientOptions(clientOptions);
+    this.options = new VertxCallFactoryOptions(options);
+    this.retryBudget = retryBudget(this.options);
+  }
+
+  private static RetryBudget retryBudget(VertxCallFactoryOptions options) {
+    RetryPolicy policy = options.getRetryPolicy();
+    return policy != null ? new RetryBudget(policy.getBudgetRatio(), policy.getBudgetMaxTokens()) : null;
+  }
+
+  /**
+   * @return the latencies observed for the service method of the {@code request}
+   */
+  private Histogram latencies(Request request) {
+    Invocation invocation = request.tag(Invocation.class);
+    if (invocation == null) {
+      return unknownLatencies;
+    }
+    Histogram histogram = latencies.get(invocation.method());
+    if (histogram == null) {
+      histogram = latencies.computeIfAbsent(invocation.method(), m -> new Histogram());
+    }
+    return histogram;
+  }
+
+  /**
+   * @return the limiter of the host of the {@code request} or {@code null} when the concurrency is not limited
+   */
+  private ConcurrencyLimiter limiter(Request request) {
+    ConcurrencyLimitOptions limitOptions = options.getConcurrencyLimit();
+    if (limitOptions == null) {
+      return null;
+    }
+    String host = request.url().host() + ":" + request.url().port();
+    ConcurrencyLimiter limiter = limiters.get(host);
+    if (limiter == null) {
+      limiter = limiters.computeIfAbsent(host, h -> new ConcurrencyLimiter(vertx(), h, limitOptions));
+    }
+    return limiter;
+  }
+
+  /**
+   * @return the concurrency limiters of the hosts called so far, keyed by {@code host:port}
+   */
+  public Map<String, ConcurrencyLimiter> concurrencyLimiters() {
+    return Collections.unmodifiableMap(limiters);
+  }
+
+  /**
+   * @return the rate limiter of the {@code request} or {@code null} when the calls are not rate limited
+   */
+  private RateLimiter rateLimiter(Request request) {
+    RateLimitOptions rateOptions = options.getRateLimit();
+    if (rateOptions == null) {
+      return null;
+    }
+    String key = rateOptions.getKey().apply(request);
+    RateLimiter limiter = rateLimiters.get(key);
+    if (limiter == null) {
+      limiter = rateLimiters.computeIfAbsent(key, k -> new RateLimiter(vertx(), k, rateOptions));
+    }
+    return limiter;
+  }
+
+  /**
+   * @return the rate limiters of the keys called so far
+   */
+  public Map<String, RateLimiter> rateLimiters() {
+    return Collections.unmodifiableMap(rateLimiters);
+  }
+
+  /**
+   * Warm up the connections of the hosts of the {@code baseUrls}, e.g the base URLs of the Retrofit services, before
+   * the first calls: the host addresses are resolved and {@code connections} connections per host are opened with
+   * concurrent {@code HEAD} requests, negotiating HTTP/2 when the client is configured for it. The {@code handler} is
+   * called on the caller context once the connections are opened, e.g to report the readiness of the service.
+   *
+   * With a client per event loop, the client of the caller event loop is warmed up. An HTTP/2 connection multiplexes
+   * the requests, so fewer connections may be opened.
+   *
+   * @param baseUrls the base URLs
+   * @param connections the number of connections per host
+   * @param handler the handler called when the connections are opened or failed to open
+   */
+  public void warmUp(List<String> baseUrls, int connections, Handler<AsyncResult<Void>> handler) {
+    if (connections < 1) {
+      throw new IllegalArgumentException("Connections must be > 0");
+    }
+    Set<String> origins = new LinkedHashSet<>();
+    for (String baseUrl : baseUrls) {
+      HttpUrl url = HttpUrl.parse(baseUrl);
+      if (url == null) {
+        throw new IllegalArgumentException("Invalid base URL " + baseUrl);
+      }
+      origins.add(url.scheme() + "://" + url.host() + ":" + url.port() + "/");
+    }
+    Context current = Vertx.currentContext();
+    Context ctx = current != null ? current : vertx().getOrCreateContext();
+    if (ctx == current) {
+      warmUp(ctx, origins, connections, handler);
+    } else {
+      ctx.runOnContext(v -> warmUp(ctx, origins, connections, handler));
+    }
+  }
+
+  private void warmUp(Context context, Set<String> origins, int connections, Handler<AsyncResult<Void>> handler) {
+    HttpClient client = client(context);
+    List<Future<Void>> futures = new ArrayList<>();
+    for (String origin : origins) {
+      for (int i = 0;i < connections;i++) {
+        Promise<Void> promise = Promise.promise();
+        futures.add(promise.future());
+        HttpClientRequest request = client.requestAbs(HttpMethod.HEAD, origin, resp -> {
+          // Any response shows the connection is usable
+          resp.exceptionHandler(promise::tryFail);
+          resp.endHandler(v -> promise.tryComplete());
+        });
+        request.exceptionHandler(promise::tryFail);
+        if (options.getConnectTimeout() > 0) {
+          request.setTimeout(options.getConnectTimeout());
+        }
+        request.end();
+      }
+    }
+    // The composite future takes a list of raw futures
+    CompositeFuture.join(new ArrayList<>(futures)).setHandler(ar -> {
+      if (ar.succeeded()) {
+        handler.handle(Future.succeededFuture());
+      } else {
+        handler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  /**
+   * @return the Vert.x instance of the factory
+   * @throws IllegalStateException when the factory was created without a Vert.x instance and the current thread is
+   *         not a Vert.x thread
+   */
+  private Vertx vertx() {
+    Vertx v = vertx;
+    if (v == null) {
+      Context current = Vertx.currentContext();
+      if (current == null) {
+        throw new IllegalStateException("Unknown Vert.x instance, create the factory with a Vertx or call it from a Vert.x thread");
+      }
+      v = current.owner();
+      vertx = v;
+    }
+    return v;
+  }
+
+  /**
+   * @return the client for the {@code context}, either the single client or the client of the context event loop, this
+   *         is executed on the {@code context}
+   */
+  private HttpClient client(Context context) {
+    if (client != null) {
+      return client;
+    }
+    // The thread of an event loop context is its event loop, the worker contexts share a client
+    Object key = context.isEventLoopContext() && Vertx.currentContext() == context ? Thread.currentThread() : SHARED;
+    HttpClient loopClient = clients.get(key);
+    if (loopClient == null) {
+      loopClient = clients.computeIfAbsent(key, k -> vertx().createHttpClient(clientOptions));
+    }
+    return loopClient;
+  }
+
+  /**
+   * Close the clients created by the factory, a client provided to the factory is not closed.
+   */
+  public void close() {
+    for (HttpClient loopClient : clients.values()) {
+      loopClient.close();
+    }
+    clients.clear();
   }
 
   private class VertxCall implements okhttp3.Call {
 
-    private final Request retroRequest;
+    private Request retroRequest;
+    private final boolean revalidate;
+    private final boolean coalesce;
+    private final boolean internal;
+    private final CallListener listener;
+    private boolean decompress;
     private final AtomicBoolean executed = new AtomicBoolean();
+    private final Timeout timeout = new Timeout();
+    private long connectTimeout;
+    private final long responseHeadersTimeout;
+    private long idleTimeout;
+    private long writeTimeout;
+    private volatile boolean canceled;
+    private Context context;
+    private Callback callback;
+    private boolean completed;
+    private HttpClientRequest request;
+    private RequestBodySink sink;
+    private StreamingResponseBody streamingBody;
+    private Flight flight;
+    private Attempts attempts;
+    private InterceptorChain chain;
+    private ConcurrencyLimiter limiter;
+    private Runnable dequeue;
+    private RateLimiter rateLimiter;
+    private long acquiredNanos;
+    private boolean requestCompressed;
+    private volatile long requestBodyBytes;
+    private long connectTimer = -1;
+    private long responseHeadersTimer = -1;
+    private long callTimer = -1;
+    private long idleTimer = -1;
+    private volatile long lastActivity;
+    private Object endpoint;
+    private long enqueueNanos;
+    private boolean connected;
+    private long connectionNanos;
+    private long connectedNanos;
+    private long requestBodyNanos;
+    private long headersNanos;
+    private long requestBytes;
+    private boolean ended;
+    private boolean requestBodyEnded;
 
-    VertxCall(Request retroRequest) {
+    VertxCall(Request retroRequest, boolean revalidate, boolean coalesce, boolean internal) {
       this.retroRequest = retroRequest;
+      this.revalidate = revalidate;
+      this.coalesce = coalesce;
+      this.internal = internal;
+      this.listener = internal ? null : options.getCallListener();
+      this.decompress = decompress(retroRequest);
+      CallOptions callOptions = retroRequest.tag(CallOptions.class);
+      if (callOptions != null) {
+        connectTimeout = resolveTimeout(callOptions.getConnectTimeout(), options.getConnectTimeout());
+        responseHeadersTimeout = resolveTimeout(callOptions.getResponseHeadersTimeout(), options.getResponseHeadersTimeout());
+        idleTimeout = resolveTimeout(callOptions.getIdleTimeout(), options.getIdleTimeout());
+        writeTimeout = options.getWriteTimeout();
+        timeout.timeout(resolveTimeout(callOptions.getCallTimeout(), options.getCallTimeout()), TimeUnit.MILLISECONDS);
+      } else {
+        connectTimeout = options.getConnectTimeout();
+        responseHeadersTimeout = options.getResponseHeadersTimeout();
+        idleTimeout = options.getIdleTimeout();
+        writeTimeout = options.getWriteTimeout();
+        timeout.timeout(options.getCallTimeout(), TimeUnit.MILLISECONDS);
+      }
+    }
+
+    private boolean decompress(Request request) {
+      // A ReadStream reads the response stream as is
+      return options.isCompression() && request.header("Accept-Encoding") == null && !isReadStream(request);
+    }
+
+    /**
+     * Override the timeouts of the call, e.g by an OkHttp interceptor proceeding with a chain returned by
+     * {@code withConnectTimeout}.
+     */
+    private synchronized void timeouts(long connectTimeout, long idleTimeout, long writeTimeout) {
+      this.connectTimeout = connectTimeout;
+      this.idleTimeout = idleTimeout;
+      this.writeTimeout = writeTimeout;
+    }
+
+    /**
+     * Replace the request of the call with the request of the application interceptors.
+     */
+    private void intercepted(Request request) {
+      retroRequest = request;
+      decompress = decompress(request);
     }
 
     @Override
@@ -50,6 +434,9 @@ public class VertxCallFactory implements Call.Factory {
 
     @Override
     public Response execute() throws IOException {
+      if (Context.isOnEventLoopThread()) {
+        throw new IllegalStateException("Cannot execute a call from an event loop thread, use enqueue or executeBlocking instead");
+      }
       CompletableFuture<Response> future = new CompletableFuture<>();
       enqueue(new Callback() {
 
@@ -64,109 +451,1651 @@ public class VertxCallFactory implements Call.Factory {
         }
       });
       try {
-        return future.get(10, TimeUnit.SECONDS);
-      } catch (Exception e) {
-        throw new IOException(e);
+        return future.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+      } catch (InterruptedException e) {
+        cancel();
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
       }
     }
 
     @Override
     public void enqueue(Callback callback) {
       if (executed.compareAndSet(false, true)) {
-        Future<Response> fut = Future.future();
-        fut.setHandler(ar -> {
-          if (ar.succeeded()) {
-            try {
-              callback.onResponse(this, ar.result());
-            } catch (IOException e) {
-              // WTF ?
-              e.printStackTrace();
+        Context current = Vertx.currentContext();
+        Context ctx = current != null ? current : vertx().getOrCreateContext();
+        CallMetrics<Object> metrics = metrics();
+        InterceptorChain chain = internal || options.getInterceptors().isEmpty() ? null : new InterceptorChain(this, callback);
+        synchronized (this) {
+          this.context = ctx;
+          this.callback = chain != null ? chain : callback;
+          this.chain = chain;
+          if (metrics != null) {
+            Invocation invocation = retroRequest.tag(Invocation.class);
+            endpoint = metrics.endpoint(invocation != null ? invocation.method() : null);
+          }
+          if (metrics != null || listener != null) {
+            enqueueNanos = System.nanoTime();
+          }
+        }
+        if (metrics != null) {
+          metrics.callBegin(endpoint);
+        }
+        if (listener != null) {
+          listener.callStart(this, enqueueNanos);
+        }
+        Runnable start = chain != null ? chain::start : this::send;
+        if (ctx == current) {
+          start.run();
+        } else {
+          ctx.runOnContext(v -> start.run());
+        }
+      } else {
+        callback.onFailure(this, new IOException("Already executed"));
+      }
+    }
+
+    /**
+     * Complete the call with a {@code response}, the callback is called on the call context. The response is closed
+     * when the call is already completed, e.g cancelled or timed out, releasing a body spilled to a file.
+     *
+     * @return whether the call was completed
+     */
+    private boolean tryComplete(Response response) {
+      ResponseBody body = response.body();
+      long responseBytes = body != null ? body.contentLength() : 0;
+      Response delivered = response;
+      if (decompress && responseBytes != 0) {
+        try {
+          delivered = decompress(response);
+        } catch (IOException e) {
+          response.close();
+          return tryFail(e);
+        }
+      }
+      Callback callback;
+      boolean done;
+      synchronized (this) {
+        done = completed;
+        completed = true;
+        callback = this.callback;
+      }
+      if (done) {
+        response.close();
+        return false;
+      }
+      cancelTimers(streamingBody == null);
+      // The host signals an overload with these status codes
+      releasePermit(response.code() == 429 || response.code() == 503);
+      if (streamingBody == null) {
+        CallMetrics<Object> metrics = metrics();
+        if (metrics != null && delivered != response && delivered.body().contentLength() >= 0) {
+          metrics.compression(endpoint, false, delivered.body().contentLength(), responseBytes);
+        }
+        callEnd(response.code(), responseBytes);
+      }
+      Response r = delivered;
+      if (Vertx.currentContext() == context) {
+        deliver(callback, r);
+      } else {
+        context.runOnContext(v -> deliver(callback, r));
+      }
+      return true;
+    }
+
+    /**
+     * Decompress a {@code gzip} or {@code deflate} encoded response and remove its {@code Content-Encoding} and
+     * {@code Content-Length} headers like OkHttp does. A buffered body is inflated chunk by chunk when the call
+     * completes, a streamed body or a body spilled to a file is inflated as it is read. The max body size applies
+     * to the decompressed bytes, the inflation stops as soon as they exceed it.
+     */
+    private Response decompress(Response response) throws IOException {
+      String encoding = response.header("Content-Encoding");
+      ResponseBody body = response.body();
+      Source source;
+      if ("gzip".equalsIgnoreCase(encoding)) {
+        source = new GzipSource(body.source());
+      } else if ("deflate".equalsIgnoreCase(encoding)) {
+        source = new InflaterSource(body.source(), new Inflater());
+      } else {
+        return response;
+      }
+      long maxBodySize = options.getMaxBodySize();
+      if (maxBodySize >= 0) {
+        source = new ForwardingSource(source) {
+          long size;
+          @Override
+          public long read(okio.Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) {
+              size += read;
+              if (size > maxBodySize) {
+                throw ResponseBodyCollector.tooLarge(maxBodySize);
+              }
             }
-          } else {
-            IOException ioe;
-            Throwable cause = ar.cause();
-            if (cause instanceof IOException) {
-              ioe = (IOException) cause;
-            } else {
-              ioe = new IOException(cause);
+            return read;
+          }
+        };
+      }
+      ResponseBody decompressed;
+      if (body instanceof StreamingResponseBody || body instanceof FileResponseBody) {
+        decompressed = ResponseBody.create(body.contentType(), -1L, Okio.buffer(source));
+      } else {
+        okio.Buffer buffer = new okio.Buffer();
+        try (Source s = source) {
+          while (s.read(buffer, 8192) != -1) {
+            // Inflate the next chunk
+          }
+        }
+        decompressed = ResponseBody.create(body.contentType(), buffer.size(), buffer);
+      }
+      return response.newBuilder()
+        .headers(response.headers().newBuilder().removeAll("Content-Encoding").removeAll("Content-Length").build())
+        .body(decompressed)
+        .build();
+    }
+
+    /**
+     * Fail the call with a {@code cause}, the callback is called on the call context.
+     *
+     * @return whether the call was failed, a call that was not yet enqueued cannot fail
+     */
+    private boolean tryFail(Throwable cause) {
+      Callback callback;
+      synchronized (this) {
+        if (completed || this.callback == null) {
+          return false;
+        }
+        completed = true;
+        callback = this.callback;
+      }
+      cancelTimers(true);
+      releasePermit(true);
+      IOException ioe = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+      callFailed(ioe);
+      if (Vertx.currentContext() == context) {
+        callback.onFailure(this, ioe);
+      } else {
+        context.runOnContext(v -> callback.onFailure(this, ioe));
+      }
+      return true;
+    }
+
+    /**
+     * Release the permit of the concurrency limiter, the permit of a streaming call is released when the response
+     * headers are received.
+     *
+     * @param dropped whether the request failed or the host is overloaded
+     */
+    private void releasePermit(boolean dropped) {
+      ConcurrencyLimiter limiter;
+      synchronized (this) {
+        limiter = this.limiter;
+        this.limiter = null;
+      }
+      if (limiter != null) {
+        // A cancelled request tells nothing about the host
+        limiter.release(canceled ? -1 : System.nanoTime() - acquiredNanos, dropped);
+      }
+    }
+
+    /**
+     * @return the metrics of the call or {@code null} when the call is not metered
+     */
+    @SuppressWarnings("unchecked")
+    private CallMetrics<Object> metrics() {
+      return internal ? null : (CallMetrics<Object>) options.getMetrics();
+    }
+
+    private void callEnd(int statusCode, long responseBytes) {
+      CallMetrics<Object> metrics = metrics();
+      if (metrics == null && listener == null) {
+        return;
+      }
+      long now = System.nanoTime();
+      long requestBytes;
+      boolean compressed;
+      synchronized (this) {
+        if (ended) {
+          return;
+        }
+        ended = true;
+        requestBytes = sink != null ? sink.bytesWritten() : this.requestBytes;
+        compressed = requestCompressed;
+      }
+      if (listener != null) {
+        if (headersNanos > 0) {
+          listener.responseBodyEnd(this, now, responseBytes);
+        }
+        listener.callEnd(this, now);
+      }
+      if (metrics != null) {
+        if (compressed) {
+          metrics.compression(endpoint, true, requestBodyBytes, requestBytes);
+        }
+        long queue = connected ? connectedNanos - enqueueNanos : 0;
+        long ttfb = (headersNanos > 0 ? headersNanos : now) - enqueueNanos;
+        metrics.callEnd(endpoint, statusCode, queue, ttfb, now - enqueueNanos, requestBytes, responseBytes);
+      }
+    }
+
+    private void callFailed(IOException failure) {
+      CallMetrics<Object> metrics = metrics();
+      if (metrics == null && listener == null) {
+        return;
+      }
+      long now = System.nanoTime();
+      synchronized (this) {
+        if (ended) {
+          return;
+        }
+        ended = true;
+      }
+      if (listener != null) {
+        listener.callFailed(this, now, failure);
+      }
+      if (metrics != null) {
+        metrics.callFailed(endpoint, now - enqueueNanos);
+      }
+    }
+
+    private void deliver(Callback callback, Response response) {
+      try {
+        callback.onResponse(this, response);
+      } catch (IOException e) {
+        reportException(context, e);
+      }
+    }
+
+    private synchronized boolean isCompleted() {
+      return completed;
+    }
+
+    /**
+     * Send the request, this is executed on the call context.
+     */
+    private void send() {
+      if (canceled) {
+        tryFail(new IOException("Canceled"));
+        return;
+      }
+      long callTimeout = TimeUnit.NANOSECONDS.toMillis(timeout.timeoutNanos());
+      String key = coalescingKey();
+      if (key != null) {
+        startCallTimer(callTimeout);
+        join(key);
+        return;
+      }
+      RetryPolicy policy = options.getRetryPolicy();
+      if (policy != null && !internal && isIdempotent() && !isStreaming()) {
+        startCallTimer(callTimeout);
+        Attempts attempts = new Attempts(this, policy);
+        synchronized (this) {
+          this.attempts = attempts;
+        }
+        if (!isCompleted()) {
+          attempts.start();
+        }
+        return;
+      }
+      ResponseCache cache = options.getResponseCache();
+      if (cache == null) {
+        sendNetwork(null, retroRequest, null, callTimeout);
+        return;
+      }
+      cache.strategy(context, retroRequest, revalidate, strategy -> {
+        if (isCompleted()) {
+          // Cancelled while reading the cache
+          return;
+        }
+        if (strategy.networkRequest == null) {
+          if (strategy.revalidate) {
+            revalidate(cache);
+          }
+          tryComplete(strategy.cacheResponse(retroRequest));
+          return;
+        }
+        sendNetwork(cache, strategy.networkRequest, strategy.entry, callTimeout);
+      });
+    }
+
+    /**
+     * Revalidate the stale response served by the call in the background.
+     */
+    private void revalidate(ResponseCache cache) {
+      String url = retroRequest.url().toString();
+      new VertxCall(retroRequest, true, false, true).enqueue(new Callback() {
+        @Override
+        public void onResponse(Call call, Response response) {
+          response.close();
+          cache.revalidated(url);
+        }
+        @Override
+        public void onFailure(Call call, IOException e) {
+          cache.revalidated(url);
+        }
+      });
+    }
+
+    /**
+     * Send the network request of the call, after the rate limiter and the concurrency limiter let it go.
+     */
+    private void sendNetwork(ResponseCache cache, Request networkRequest, CacheEntry cacheEntry, long callTimeout) {
+      startCallTimer(callTimeout);
+      RateLimiter rateLimiter = rateLimiter(retroRequest);
+      if (rateLimiter == null) {
+        acquirePermit(cache, networkRequest, cacheEntry);
+        return;
+      }
+      Runnable dequeue = rateLimiter.acquire(context, ar -> {
+        synchronized (this) {
+          this.dequeue = null;
+        }
+        if (ar.succeeded()) {
+          boolean done;
+          synchronized (this) {
+            done = completed;
+            if (!done) {
+              this.rateLimiter = rateLimiter;
             }
-            callback.onFailure(this, ioe);
           }
-        });
-        HttpMethod method = HttpMethod.valueOf(retroRequest.method());
-        HttpClientRequest request = client.requestAbs(method, this.retroRequest.url().toString(), resp -> {
-          resp.exceptionHandler(fut::tryFail);
-          resp.bodyHandler(body -> {
-            Response.Builder builder = new Response.Builder();
-            builder.protocol(Protocol.HTTP_1_1);
-            builder.request(this.retroRequest);
-            builder.code(resp.statusCode());
-            builder.message(resp.statusMessage());
-            for (Map.Entry<String, String> header : resp.headers()) {
-              builder.addHeader(header.getKey(), header.getValue());
+          if (done) {
+            // Cancelled or timed out while waiting for the token
+            rateLimiter.giveBack();
+          } else {
+            acquirePermit(cache, networkRequest, cacheEntry);
+          }
+        } else {
+          tryFail(ar.cause());
+        }
+      });
+      waiting(dequeue);
+    }
+
+    /**
+     * Acquire the permit of the concurrency limiter and send the network request.
+     */
+    private void acquirePermit(ResponseCache cache, Request networkRequest, CacheEntry cacheEntry) {
+      ConcurrencyLimiter limiter = limiter(retroRequest);
+      if (limiter == null) {
+        sendNetworkRequest(cache, networkRequest, cacheEntry);
+        return;
+      }
+      Runnable dequeue = limiter.acquire(context, ar -> {
+        synchronized (this) {
+          this.dequeue = null;
+        }
+        if (ar.succeeded()) {
+          boolean done;
+          synchronized (this) {
+            done = completed;
+            if (!done) {
+              this.limiter = limiter;
+              acquiredNanos = System.nanoTime();
             }
-            String mediaTypeHeader = resp.getHeader("Content-Type");
-            MediaType mediaType = mediaTypeHeader != null ? MediaType.parse(mediaTypeHeader) : null;
-            builder.body(ResponseBody.create(mediaType, body.getBytes()));
-            fut.tryComplete(builder.build());
+          }
+          if (done) {
+            // Cancelled or timed out while waiting for the permit
+            limiter.release(-1, false);
+          } else {
+            sendNetworkRequest(cache, networkRequest, cacheEntry);
+          }
+        } else {
+          tryFail(ar.cause());
+        }
+      });
+      waiting(dequeue);
+    }
+
+    /**
+     * Keep the task removing the call from the queue of a limiter, it is run when the call is cancelled or times out
+     * while waiting.
+     */
+    private void waiting(Runnable dequeue) {
+      if (dequeue == null) {
+        return;
+      }
+      boolean done;
+      synchronized (this) {
+        done = completed;
+        if (!done) {
+          this.dequeue = dequeue;
+        }
+      }
+      if (done) {
+        dequeue.run();
+      }
+    }
+
+    /**
+     * Send the network request through the network interceptors, this is executed on the call context.
+     */
+    private void sendNetworkRequest(ResponseCache cache, Request networkRequest, CacheEntry cacheEntry) {
+      if (options.getNetworkInterceptors().isEmpty()) {
+        sendRequest(cache, networkRequest, cacheEntry);
+        return;
+      }
+      InterceptorChain chain;
+      synchronized (this) {
+        chain = this.chain;
+        if (chain == null) {
+          chain = new InterceptorChain(this, callback);
+          this.chain = chain;
+          callback = chain;
+        }
+      }
+      chain.network(cache, networkRequest, cacheEntry);
+    }
+
+    /**
+     * Send the network request, this is executed on the call context.
+     */
+    private void sendRequest(ResponseCache cache, Request networkRequest, CacheEntry cacheEntry) {
+      long sentRequestMillis = System.currentTimeMillis();
+      boolean streaming = isStreaming();
+      long headersTimeout = responseHeadersTimeout;
+      if (headersTimeout == 0 && streaming) {
+        // The idle timeout applies to the streamed body only
+        headersTimeout = idleTimeout;
+      }
+      synchronized (this) {
+        if (connectTimeout > 0) {
+          connectTimer = vertx().setTimer(connectTimeout, id -> abort(new SocketTimeoutException("connect timed out")));
+        }
+        if (headersTimeout > 0) {
+          responseHeadersTimer = vertx().setTimer(headersTimeout, id -> abort(new SocketTimeoutException("timeout waiting for response headers")));
+        }
+        if (idleTimeout > 0 && !streaming) {
+          lastActivity = System.nanoTime();
+          idleTimer = vertx().setTimer(idleTimeout, this::checkIdle);
+        }
+      }
+      HttpMethod method = HttpMethod.valueOf(networkRequest.method());
+      HttpClientRequest request = client(context).requestAbs(method, networkRequest.url().toString(), resp -> {
+        lastActivity = System.nanoTime();
+        RateLimiter rateLimiter;
+        synchronized (this) {
+          headersNanos = lastActivity;
+          responseHeadersTimer = cancelTimer(responseHeadersTimer);
+          rateLimiter = this.rateLimiter;
+        }
+        if (rateLimiter != null) {
+          rateLimiter.update(resp.statusCode(), resp.getHeader("Retry-After"), resp.getHeader("X-RateLimit-Remaining"), resp.getHeader("X-RateLimit-Reset"));
+        }
+        if (listener != null) {
+          listener.responseHeadersEnd(this, headersNanos, resp.statusCode());
+        }
+        resp.exceptionHandler(this::tryFail);
+        long maxBodySize = options.getMaxBodySize();
+        String contentLengthHeader = resp.getHeader("Content-Length");
+        long contentLength = -1L;
+        if (contentLengthHeader != null) {
+          try {
+            contentLength = Long.parseLong(contentLengthHeader.trim());
+          } catch (NumberFormatException e) {
+            abort(new ProtocolException("Invalid Content-Length " + contentLengthHeader));
+            return;
+          }
+        }
+        if (maxBodySize >= 0 && contentLength > maxBodySize) {
+          // Reject early instead of reading the body
+          abort(ResponseBodyCollector.tooLarge(maxBodySize));
+          return;
+        }
+        if (cacheEntry != null && resp.statusCode() == 304) {
+          resp.endHandler(v -> {
+            CacheEntry updated = cacheEntry.update(headers(resp.headers()), sentRequestMillis, System.currentTimeMillis());
+            cache.put(context, updated);
+            tryComplete(updated.response(retroRequest));
           });
-        });
-        request.exceptionHandler(fut::tryFail);
-        int size = retroRequest.headers().size();
-        Headers retroHeaders = retroRequest.headers();
+          return;
+        }
+        String mediaTypeHeader = resp.getHeader("Content-Type");
+        MediaType mediaType = mediaTypeHeader != null ? MediaType.parse(mediaTypeHeader) : null;
+        if (streaming && resp.statusCode() >= 200 && resp.statusCode() < 300 && resp.statusCode() != 204 && resp.statusCode() != 205) {
+          StreamingResponseBody body = new StreamingResponseBody(context, resp, mediaType, contentLength, idleTimeout, v -> streamingEnded(resp.statusCode()));
+          synchronized (this) {
+            streamingBody = body;
+          }
+          if (canceled) {
+            body.fail(new IOException("Canceled"));
+          }
+          Response response = response(resp, body);
+          if (isReadStream(retroRequest)) {
+            // Retrofit wraps the body, the ReadStream finds it in the response request tags
+            response = response.newBuilder().request(retroRequest.newBuilder().tag(StreamingResponseBody.class, body).build()).build();
+          }
+          tryComplete(response);
+        } else {
+          CallOptions callOptions = retroRequest.tag(CallOptions.class);
+          AsyncFile bodyFile = callOptions != null && resp.statusCode() >= 200 && resp.statusCode() < 300 ? callOptions.getResponseBodyFile() : null;
+          ResponseBodyCollector collector = new ResponseBodyCollector(vertx(), resp, mediaType, contentLength,
+            options.getMaxInMemoryBodySize(), maxBodySize, bodyFile, err -> abort(err instanceof IOException ? (IOException) err : new IOException(err)));
+          resp.exceptionHandler(collector::fail);
+          resp.handler(chunk -> {
+            lastActivity = System.nanoTime();
+            collector.handle(chunk);
+          });
+          resp.endHandler(v -> collector.end(ar -> {
+            if (ar.failed()) {
+              return;
+            }
+            Response response = response(resp, ar.result());
+            if (cache != null) {
+              if (collector.buffer() != null) {
+                // The cache keeps a compact copy of the body
+                store(cache, response, collector.buffer().getBytes(), sentRequestMillis);
+              } else if (retroRequest.method().equals("GET")) {
+                // Bodies written to a file are not cached
+                cache.remove(context, retroRequest.url().toString());
+              }
+            }
+            tryComplete(response);
+          }));
+        }
+      });
+      RequestBody body = networkRequest.body();
+      RequestBodySink sink = body != null ? new RequestBodySink(request) : null;
+      if (sink != null) {
+        sink.timeout().timeout(writeTimeout, TimeUnit.MILLISECONDS);
+      }
+      synchronized (this) {
+        this.request = request;
+        this.sink = sink;
+      }
+      if (isCompleted()) {
+        // Cancelled or timed out concurrently
+        request.reset();
+        return;
+      }
+      request.connectionHandler(conn -> {
+        long now = System.nanoTime();
+        synchronized (this) {
+          connectionNanos = now;
+        }
+        if (listener != null) {
+          listener.connectEnd(this, now);
+        }
+      });
+      // Okhttp headers are already validated, the Vert.x headers add them as is
+      Headers retroHeaders = networkRequest.headers();
+      int size = retroHeaders.size();
+      if (size > 0) {
         MultiMap headers = request.headers();
         for (int i = 0;i < size;i++) {
-          String header = retroHeaders.name(i);
-          String value = retroHeaders.value(i);
-          headers.add(header, value);
+          headers.add(retroHeaders.name(i), retroHeaders.value(i));
         }
+      }
+      if (decompress) {
+        request.putHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+      }
+      CallOptions callOptions = retroRequest.tag(CallOptions.class);
+      if (callOptions != null && callOptions.getStreamPriority() != null) {
+        request.setStreamPriority(callOptions.getStreamPriority());
+      }
+      if (body == null) {
+        request.exceptionHandler(this::tryFail);
+        request.sendHead(version -> connected());
+        request.end();
+      } else {
+        request.exceptionHandler(err -> {
+          sink.fail(err);
+          tryFail(err);
+        });
+        long contentLength;
         try {
-          RequestBody body = this.retroRequest.body();
-          if (body != null && body.contentLength() > 0) {
-            MediaType mediaType = body.contentType();
-            request.putHeader("content-type", mediaType.toString());
-
-            request.putHeader("content-length", "" + body.contentLength());
-            Buffer buffer = new Buffer();
-            body.writeTo(buffer);
-            request.write(io.vertx.core.buffer.Buffer.buffer(buffer.readByteArray()));
-          }
+          contentLength = body.contentLength();
         } catch (IOException e) {
-          e.printStackTrace(); // ?
+          request.reset();
+          tryFail(e);
+          return;
+        }
+        MediaType mediaType = body.contentType();
+        if (mediaType != null) {
+          request.putHeader(HttpHeaders.CONTENT_TYPE, mediaType.toString());
+        }
+        long threshold = options.getRequestCompressionThreshold();
+        boolean compress = threshold >= 0 && networkRequest.header("Content-Encoding") == null && (contentLength < 0 || contentLength > threshold);
+        if (compress) {
+          synchronized (this) {
+            requestCompressed = true;
+          }
+          request.putHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+          request.setChunked(true);
+        } else if (contentLength >= 0) {
+          request.putHeader(HttpHeaders.CONTENT_LENGTH, Long.toString(contentLength));
+        } else {
+          request.setChunked(true);
+        }
+        request.sendHead(version -> connected());
+        if (body instanceof BufferRequestBody && !compress) {
+          sink.write(((BufferRequestBody) body).buffer());
+          requestBodyEnd(request, sink);
+        } else if (body instanceof FileRequestBody && !compress) {
+          FileRequestBody fileBody = (FileRequestBody) body;
+          Runnable pipe = () -> sink.pipe(vertx().fileSystem(), fileBody.file().getPath(), fileBody.offset(), contentLength, ar -> {
+            if (ar.succeeded()) {
+              requestBodyEnd(request, sink);
+            } else {
+              request.reset();
+              tryFail(ar.cause());
+            }
+          });
+          if (Vertx.currentContext() == context) {
+            pipe.run();
+          } else {
+            context.runOnContext(v -> pipe.run());
+          }
+        } else if (contentLength < 0 || contentLength > RequestBodySink.CHUNK_SIZE) {
+          if (Context.isOnEventLoopThread() || context.isWorkerContext()) {
+            // Let the body producer wait for the request to drain without blocking the event loop or the worker
+            // context running the drain handler
+            executeBlocking(() -> {
+              writeBody(request, body, sink, compress);
+              return null;
+            }, ar -> {});
+          } else {
+            writeBody(request, body, sink, compress);
+          }
+        } else {
+          // A small body is written at once by the call context, it cannot wait for the drain handler it runs
+          sink.buffer();
+          writeBody(request, body, sink, compress);
         }
-        request.end();
-      } else {
-        callback.onFailure(this, new IOException("Already executed"));
       }
     }
 
-    @Override
-    public void cancel() {
+    private synchronized void startCallTimer(long callTimeout) {
+      if (callTimeout > 0) {
+        callTimer = vertx().setTimer(callTimeout, id -> abort(new InterruptedIOException("timeout")));
+      }
     }
 
-    @Override
-    public boolean isExecuted() {
-      return executed.get();
+    /**
+     * @return the coalescing key of the call or {@code null} when the call is not coalesced
+     */
+    private String coalescingKey() {
+      String method = retroRequest.method();
+      if (!coalesce || retroRequest.body() != null || !(method.equals("GET") || method.equals("HEAD")) || isStreaming() || hasResponseBodyFile()) {
+        // The calls of a flight share a buffered body, a body written to the file of a call cannot be shared
+        return null;
+      }
+      return options.getCoalescingKey().apply(retroRequest);
     }
 
-    @Override
-    public boolean isCanceled() {
-      return false;
+    /**
+     * @return whether the response body is written to the file of the call
+     */
+    private boolean hasResponseBodyFile() {
+      CallOptions callOptions = retroRequest.tag(CallOptions.class);
+      return callOptions != null && callOptions.getResponseBodyFile() != null;
     }
 
-    @Override
-    public Timeout timeout() {
-      return Timeout.NONE;
+    /**
+     * Join the in-flight request with the same {@code key} or start a new one.
+     */
+    private void join(String key) {
+      while (true) {
+        Flight flight = flights.get(key);
+        boolean created = false;
+        if (flight == null) {
+          Flight candidate = new Flight(key, retroRequest);
+          flight = flights.putIfAbsent(key, candidate);
+          if (flight == null) {
+            flight = candidate;
+            created = true;
+          }
+        }
+        synchronized (this) {
+          this.flight = flight;
+        }
+        if (flight.join(this)) {
+          if (created) {
+            flight.upstream.enqueue(flight);
+          }
+          return;
+        }
+      }
     }
 
-    @Override
-    public Call clone() {
-      return new VertxCall(retroRequest);
+    /**
+     * @return whether the request method is idempotent and can be sent several times
+     */
+    private boolean isIdempotent() {
+      switch (retroRequest.method()) {
+        case "GET":
+        case "HEAD":
+        case "OPTIONS":
+        case "PUT":
+        case "DELETE":
+        case "TRACE":
+          return true;
+        default:
+          return false;
+      }
     }
+
+    private void store(ResponseCache cache, Response response, byte[] body, long sentRequestMillis) {
+      String url = retroRequest.url().toString();
+      if (retroRequest.method().equals("GET") && CacheEntry.isCacheable(response.code(), response.headers(), retroRequest)) {
+        Headers varyHeaders = CacheEntry.varyHeaders(response.headers(), retroRequest);
+        cache.put(context, new CacheEntry(url, varyHeaders, response.code(), response.message(), response.headers(), sentRequestMillis, System.currentTimeMillis(), ByteBuffer.wrap(body)));
+      } else if (retroRequest.method().equals("GET")) {
+        cache.remove(context, url);
+      }
+    }
+
+    private void writeBody(HttpClientRequest request, RequestBody body, RequestBodySink sink, boolean compress) {
+      try {
+        Sink target = sink;
+        if (compress) {
+          target = new ForwardingSink(new GzipSink(sink)) {
+            @Override
+            public void write(okio.Buffer source, long byteCount) throws IOException {
+              super.write(source, byteCount);
+              requestBodyBytes += byteCount;
+            }
+          };
+        }
+        BufferedSink buffered = Okio.buffer(target);
+        body.writeTo(buffered);
+        buffered.close();
+        requestBodyEnd(request, sink);
+      } catch (Exception e) {
+        request.reset();
+        tryFail(e);
+      }
+    }
+
+    private void requestBodyEnd(HttpClientRequest request, RequestBodySink sink) {
+      request.end();
+      long now = System.nanoTime();
+      boolean wasConnected;
+      synchronized (this) {
+        requestBodyEnded = true;
+        wasConnected = connected;
+        if (wasConnected) {
+          requestBodyNanos = now;
+        }
+      }
+      if (listener != null && wasConnected) {
+        listener.requestBodyEnd(this, now, sink.bytesWritten());
+      }
+    }
+
+    private void connected() {
+      long now = System.nanoTime();
+      boolean bodyEnded;
+      synchronized (this) {
+        connectTimer = cancelTimer(connectTimer);
+        connected = true;
+        connectedNanos = now;
+        bodyEnded = requestBodyEnded;
+        if (bodyEnded) {
+          requestBodyNanos = now;
+        }
+      }
+      if (listener != null) {
+        listener.requestHeadersEnd(this, now);
+        if (bodyEnded) {
+          // The body was buffered by the request until the connection was acquired
+          listener.requestBodyEnd(this, now, sink.bytesWritten());
+        }
+      }
+    }
+
+    private synchronized boolean isConnected() {
+      return connected;
+    }
+
+    /**
+     * Adopt the phases of the internal call that performed the request of this call, e.g the attempt completing the
+     * call or the upstream call of a flight, the metrics of this call report its timings and the listener receives its
+     * events. A phase that happened before this call was enqueued is reported at the enqueue time.
+     */
+    private void adopt(VertxCall performer, int statusCode) {
+      if (isCompleted()) {
+        return;
+      }
+      boolean performerConnected;
+      long performerConnectionNanos;
+      long performerConnectedNanos;
+      long performerRequestBodyNanos;
+      long performerHeadersNanos;
+      long performerRequestBytes;
+      boolean performerCompressed;
+      long start;
+      synchronized (this) {
+        start = enqueueNanos;
+      }
+      synchronized (performer) {
+        performerConnected = performer.connected;
+        performerConnectionNanos = performer.connectionNanos > 0 ? Math.max(start, performer.connectionNanos) : 0;
+        performerConnectedNanos = performer.connected ? Math.max(start, performer.connectedNanos) : 0;
+        performerRequestBodyNanos = performer.requestBodyNanos > 0 ? Math.max(start, performer.requestBodyNanos) : 0;
+        performerHeadersNanos = performer.headersNanos > 0 ? Math.max(start, performer.headersNanos) : 0;
+        performerRequestBytes = performer.sink != null ? performer.sink.bytesWritten() : performer.requestBytes;
+        performerCompressed = performer.requestCompressed;
+      }
+      synchronized (this) {
+        connected = performerConnected;
+        connectionNanos = performerConnectionNanos;
+        connectedNanos = performerConnectedNanos;
+        requestBodyNanos = performerRequestBodyNanos;
+        headersNanos = performerHeadersNanos;
+        requestBytes = performerRequestBytes;
+        requestCompressed = performerCompressed;
+      }
+      requestBodyBytes = performer.requestBodyBytes;
+      if (listener != null) {
+        if (performerConnectionNanos > 0) {
+          listener.connectEnd(this, performerConnectionNanos);
+        }
+        if (performerConnected) {
+          listener.requestHeadersEnd(this, performerConnectedNanos);
+          if (performerRequestBodyNanos > 0) {
+            listener.requestBodyEnd(this, performerRequestBodyNanos, performerRequestBytes);
+          }
+        }
+        if (performerHeadersNanos > 0) {
+          listener.responseHeadersEnd(this, performerHeadersNanos, statusCode);
+        }
+      }
+    }
+
+    private void streamingEnded(int statusCode) {
+      cancelTimers(true);
+      StreamingResponseBody body;
+      synchronized (this) {
+        body = streamingBody;
+      }
+      callEnd(statusCode, body != null ? body.bytesReceived() : 0);
+    }
+
+    private void checkIdle(long id) {
+      synchronized (this) {
+        if (idleTimer != id) {
+          return;
+        }
+        long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivity);
+        if (idle < idleTimeout) {
+          idleTimer = vertx().setTimer(idleTimeout - idle, this::checkIdle);
+          return;
+        }
+        idleTimer = -1;
+      }
+      abort(new SocketTimeoutException("timeout"));
+    }
+
+    private synchronized void cancelTimers(boolean all) {
+      connectTimer = cancelTimer(connectTimer);
+      responseHeadersTimer = cancelTimer(responseHeadersTimer);
+      idleTimer = cancelTimer(idleTimer);
+      if (all) {
+        callTimer = cancelTimer(callTimer);
+      }
+    }
+
+    private long cancelTimer(long id) {
+      if (id >= 0) {
+        vertx().cancelTimer(id);
+      }
+      return -1;
+    }
+
+    /**
+     * @return whether the Retrofit method is annotated with {@link Streaming}, error responses are always buffered
+     *         since Retrofit reads them in the callback
+     */
+    private boolean isStreaming() {
+      Invocation invocation = retroRequest.tag(Invocation.class);
+      return invocation != null && invocation.method().isAnnotationPresent(Streaming.class);
+    }
+
+    /**
+     * @return whether the Retrofit method returns a {@link ReadStream} reading the streamed body without blocking
+     */
+    private boolean isReadStream(Request request) {
+      Invocation invocation = request.tag(Invocation.class);
+      return invocation != null && invocation.method().getReturnType() == ReadStream.class;
+    }
+
+    private Response response(HttpClientResponse resp, ResponseBody body) {
+      Response.Builder builder = new Response.Builder();
+      builder.protocol(protocol(resp.version(), retroRequest.isHttps()));
+      builder.request(this.retroRequest);
+      builder.code(resp.statusCode());
+      builder.message(resp.statusMessage());
+      builder.headers(headers(resp.headers()));
+      builder.body(body);
+      return builder.build();
+    }
+
+    @Override
+    public void cancel() {
+      synchronized (this) {
+        if (canceled) {
+          return;
+        }
+        canceled = true;
+      }
+      abort(new IOException("Canceled"));
+    }
+
+    /**
+     * Abort the call with the {@code cause} failure, the request is reset and the blocked body reader or
+     * writer is released.
+     *
+     * @param cause the failure
+     */
+    private void abort(IOException cause) {
+      HttpClientRequest request;
+      RequestBodySink sink;
+      StreamingResponseBody streamingBody;
+      synchronized (this) {
+        request = this.request;
+        sink = this.sink;
+        streamingBody = this.streamingBody;
+      }
+      tryFail(cause);
+      Flight flight;
+      Attempts attempts;
+      Runnable dequeue;
+      synchronized (this) {
+        flight = this.flight;
+        attempts = this.attempts;
+        dequeue = this.dequeue;
+        this.dequeue = null;
+      }
+      if (dequeue != null) {
+        dequeue.run();
+      }
+      if (flight != null) {
+        flight.leave(this);
+      }
+      if (attempts != null) {
+        attempts.cancel();
+      }
+      if (sink != null) {
+        sink.fail(cause);
+      }
+      if (streamingBody != null) {
+        streamingBody.fail(cause);
+      }
+      if (request != null) {
+        request.reset();
+      }
+    }
+
+    @Override
+    public boolean isExecuted() {
+      return executed.get();
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return canceled;
+    }
+
+    @Override
+    public Timeout timeout() {
+      return timeout;
+    }
+
+    @Override
+    public Call clone() {
+      return new VertxCall(retroRequest, false, coalesce, false);
+    }
+  }
+
+  /**
+   * An in-flight request shared by coalesced calls, the request is performed by an upstream call and its response
+   * is fanned out to the calls. The upstream call is cancelled when all the calls have left.
+   */
+  private class Flight implements Callback {
+
+    private final String key;
+    private final VertxCall upstream;
+    private final List<VertxCall> calls = new ArrayList<>();
+    private boolean done;
+
+    Flight(String key, Request request) {
+      this.key = key;
+      this.upstream = new VertxCall(request, false, false, true);
+    }
+
+    synchronized boolean join(VertxCall call) {
+      if (done) {
+        return false;
+      }
+      calls.add(call);
+      return true;
+    }
+
+    void leave(VertxCall call) {
+      synchronized (this) {
+        if (done || !calls.remove(call) || !calls.isEmpty()) {
+          return;
+        }
+        done = true;
+      }
+      flights.remove(key, this);
+      upstream.cancel();
+    }
+
+    private List<VertxCall> complete() {
+      flights.remove(key, this);
+      synchronized (this) {
+        done = true;
+        return new ArrayList<>(calls);
+      }
+    }
+
+    @Override
+    public void onResponse(Call call, Response response) throws IOException {
+      List<VertxCall> calls = complete();
+      ResponseBody body = response.body();
+      MediaType mediaType = body.contentType();
+      Buffer buffer = body instanceof BufferResponseBody ? ((BufferResponseBody) body).buffer() : Buffer.buffer(body.bytes());
+      for (VertxCall c : calls) {
+        c.adopt(upstream, response.code());
+        // Each call reads the shared body buffer with its own source
+        c.tryComplete(response.newBuilder()
+          .request(c.retroRequest)
+          .body(new BufferResponseBody(mediaType, buffer))
+          .build());
+      }
+    }
+
+    @Override
+    public void onFailure(Call call, IOException e) {
+      for (VertxCall c : complete()) {
+        c.tryFail(e);
+      }
+    }
+  }
+
+  /**
+   * The attempts of a call sent with the {@link RetryPolicy}: an attempt failing to obtain a connection is retried
+   * and a hedge attempt is sent when the response takes longer than the hedging delay. The first response completes
+   * the call and the other attempts are cancelled. Retries and hedges withdraw a token from the retry budget.
+   */
+  private class Attempts {
+
+    private final VertxCall call;
+    private final RetryPolicy policy;
+    private final Histogram latencies;
+    private final List<Attempt> pending = new ArrayList<>();
+    private int retries;
+    private long hedgeTimer = -1;
+    private long retryTimer = -1;
+    private boolean done;
+
+    Attempts(VertxCall call, RetryPolicy policy) {
+      this.call = call;
+      this.policy = policy;
+      // Concurrent attempts would write to the same response body file
+      this.latencies = policy.isHedging() && !call.hasResponseBodyFile() ? latencies(call.retroRequest) : null;
+    }
+
+    /**
+     * Send the first attempt and schedule the hedge, this is executed on the call context.
+     */
+    void start() {
+      retryBudget.deposit();
+      send();
+      if (latencies != null && latencies.getCount() >= HEDGING_MIN_SAMPLES) {
+        long percentile = TimeUnit.NANOSECONDS.toMillis(latencies.getValueAtPercentile(policy.getHedgingPercentile()));
+        long delay = Math.max(1, Math.max(policy.getHedgingMinDelay(), percentile));
+        synchronized (this) {
+          if (!done) {
+            hedgeTimer = vertx().setTimer(delay, id -> hedge());
+          }
+        }
+      }
+    }
+
+    private void send() {
+      VertxCall attemptCall = new VertxCall(call.retroRequest, false, false, true);
+      // The call timer covers all the attempts
+      attemptCall.timeout().clearTimeout();
+      synchronized (call) {
+        attemptCall.timeouts(call.connectTimeout, call.idleTimeout, call.writeTimeout);
+      }
+      Attempt attempt = new Attempt(attemptCall);
+      synchronized (this) {
+        if (done) {
+          return;
+        }
+        pending.add(attempt);
+      }
+      attemptCall.enqueue(attempt);
+    }
+
+    private void hedge() {
+      synchronized (this) {
+        hedgeTimer = -1;
+        if (done) {
+          return;
+        }
+      }
+      if (retryBudget.tryWithdraw()) {
+        send();
+      }
+    }
+
+    private void retry() {
+      long backoff = policy.getRetryBackoff();
+      if (backoff > 0) {
+        synchronized (this) {
+          if (!done) {
+            retryTimer = vertx().setTimer(backoff, id -> {
+              synchronized (this) {
+                retryTimer = -1;
+              }
+              send();
+            });
+          }
+        }
+      } else {
+        send();
+      }
+    }
+
+    /**
+     * @return the pending attempts or {@code null} when the call is already done
+     */
+    private List<Attempt> complete() {
+      synchronized (this) {
+        if (done) {
+          return null;
+        }
+        done = true;
+        if (hedgeTimer >= 0) {
+          vertx().cancelTimer(hedgeTimer);
+        }
+        if (retryTimer >= 0) {
+          vertx().cancelTimer(retryTimer);
+        }
+        List<Attempt> attempts = new ArrayList<>(pending);
+        pending.clear();
+        return attempts;
+      }
+    }
+
+    void cancel() {
+      List<Attempt> attempts = complete();
+      if (attempts != null) {
+        for (Attempt attempt : attempts) {
+          attempt.call.cancel();
+        }
+      }
+    }
+
+    private class Attempt implements Callback {
+
+      private final VertxCall call;
+      private final long startNanos = System.nanoTime();
+
+      Attempt(VertxCall call) {
+        this.call = call;
+      }
+
+      @Override
+      public void onResponse(Call c, Response response) {
+        List<Attempt> attempts = complete();
+        if (attempts == null) {
+          response.close();
+          return;
+        }
+        if (latencies != null) {
+          latencies.record(System.nanoTime() - startNanos);
+        }
+        for (Attempt attempt : attempts) {
+          if (attempt != this) {
+            attempt.call.cancel();
+          }
+        }
+        Attempts.this.call.adopt(call, response.code());
+        Attempts.this.call.tryComplete(response);
+      }
+
+      @Override
+      public void onFailure(Call c, IOException e) {
+        boolean retry;
+        synchronized (Attempts.this) {
+          if (done || !pending.remove(this)) {
+            return;
+          }
+          // Only a request that was not sent is retried
+          retry = !(e instanceof ConcurrencyLimitException || e instanceof RateLimitException) && !call.isConnected() && retries < policy.getMaxRetries() && retryBudget.tryWithdraw();
+          if (retry) {
+            retries++;
+          } else if (!pending.isEmpty() || retryTimer >= 0) {
+            // Wait for the other attempts
+            return;
+          }
+        }
+        if (retry) {
+          retry();
+        } else if (complete() != null) {
+          Attempts.this.call.tryFail(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * The interceptor chain of a call, a single chain object runs the application interceptors and then the network
+   * interceptors of the call. The response of the call is delivered to the handler of the innermost interceptor and
+   * travels back through the interceptors to the call callback.
+   */
+  private class InterceptorChain implements OkHttpInterceptor.BlockingChain, Callback {
+
+    private final VertxCall call;
+    private final Callback callback;
+    private List<VertxInterceptor> interceptors;
+    private int index;
+    private Request request;
+    private Handler<AsyncResult<Response>> terminal;
+    private ResponseCache cache;
+    private CacheEntry cacheEntry;
+    private boolean network;
+    private boolean ended;
+    private boolean delivered;
+    private volatile Thread blockingThread;
+
+    InterceptorChain(VertxCall call, Callback callback) {
+      this.call = call;
+      this.callback = callback;
+    }
+
+    /**
+     * Run the application interceptors, the last one proceeds with the call.
+     */
+    void start() {
+      interceptors = options.getInterceptors();
+      next(call.retroRequest, this::end);
+    }
+
+    /**
+     * Run the network interceptors, the last one sends the network request.
+     */
+    void network(ResponseCache cache, Request networkRequest, CacheEntry cacheEntry) {
+      Handler<AsyncResult<Response>> handler;
+      synchronized (this) {
+        this.cache = cache;
+        this.cacheEntry = cacheEntry;
+        network = true;
+        interceptors = options.getNetworkInterceptors();
+        index = 0;
+        handler = terminal != null ? terminal : this::end;
+        terminal = null;
+      }
+      next(networkRequest, handler);
+    }
+
+    @Override
+    public Request request() {
+      return request;
+    }
+
+    @Override
+    public okhttp3.Call call() {
+      return call;
+    }
+
+    @Override
+    public void proceed(Request request, Handler<AsyncResult<Response>> handler) {
+      if (request == null) {
+        throw new NullPointerException("request == null");
+      }
+      VertxInterceptor interceptor;
+      synchronized (this) {
+        index++;
+        interceptor = index < interceptors.size() ? interceptors.get(index) : null;
+      }
+      if (interceptor instanceof OkHttpInterceptor && Thread.currentThread() == blockingThread) {
+        // A blocking interceptor proceeds with the next blocking interceptor on its own thread
+        next(request, handler);
+      } else if (Context.isOnEventLoopThread() && Vertx.currentContext() == call.context) {
+        next(request, handler);
+      } else {
+        call.context.runOnContext(v -> next(request, handler));
+      }
+    }
+
+    @Override
+    public <T> void executeBlocking(Callable<T> blockingCode, Handler<AsyncResult<T>> handler) {
+      VertxCallFactory.this.executeBlocking(blockingCode, handler);
+    }
+
+    private void next(Request request, Handler<AsyncResult<Response>> handler) {
+      VertxInterceptor interceptor;
+      synchronized (this) {
+        this.request = request;
+        if (index < interceptors.size()) {
+          interceptor = interceptors.get(index);
+        } else {
+          interceptor = null;
+          terminal = handler;
+        }
+      }
+      if (interceptor != null) {
+        try {
+          interceptor.intercept(this, handler);
+        } catch (RuntimeException e) {
+          handler.handle(Future.failedFuture(e));
+        }
+      } else if (call.isCompleted()) {
+        // Cancelled or timed out while intercepting, the failure was delivered
+      } else if (network) {
+        call.sendRequest(cache, request, cacheEntry);
+      } else {
+        call.intercepted(request);
+        call.send();
+      }
+    }
+
+    /**
+     * The outermost interceptor completed the call.
+     */
+    private void end(AsyncResult<Response> ar) {
+      synchronized (this) {
+        if (delivered) {
+          if (ar.succeeded()) {
+            ar.result().close();
+          }
+          return;
+        }
+        ended = true;
+      }
+      if (!call.isCompleted()) {
+        // An interceptor responded without proceeding, complete the call like a network response
+        if (ar.succeeded()) {
+          call.tryComplete(ar.result());
+        } else {
+          call.tryFail(ar.cause());
+        }
+        return;
+      }
+      deliver(ar);
+    }
+
+    private void deliver(AsyncResult<Response> ar) {
+      synchronized (this) {
+        if (delivered) {
+          return;
+        }
+        delivered = true;
+      }
+      if (ar.succeeded()) {
+        try {
+          callback.onResponse(call, ar.result());
+        } catch (IOException e) {
+          reportException(call.context, e);
+        }
+      } else {
+        Throwable cause = ar.cause();
+        callback.onFailure(call, cause instanceof IOException ? (IOException) cause : new IOException(cause));
+      }
+    }
+
+    /**
+     * Resume the interceptors with the result of the call.
+     */
+    private void resume(AsyncResult<Response> ar) {
+      Handler<AsyncResult<Response>> handler;
+      synchronized (this) {
+        handler = ended ? null : terminal;
+        terminal = null;
+      }
+      if (handler != null) {
+        handler.handle(ar);
+      } else {
+        // The call was completed before the interceptors proceeded or by the outermost interceptor
+        deliver(ar);
+      }
+    }
+
+    @Override
+    public void onResponse(okhttp3.Call c, Response response) {
+      resume(Future.succeededFuture(response));
+    }
+
+    @Override
+    public void onFailure(okhttp3.Call c, IOException e) {
+      resume(Future.failedFuture(e));
+    }
+
+    @Override
+    public Response proceed(Request request) throws IOException {
+      if (Context.isOnEventLoopThread()) {
+        throw new IllegalStateException("Cannot proceed synchronously from an event loop thread");
+      }
+      CompletableFuture<Response> future = new CompletableFuture<>();
+      blockingThread = Thread.currentThread();
+      proceed(request, ar -> {
+        if (ar.succeeded()) {
+          future.complete(ar.result());
+        } else {
+          future.completeExceptionally(ar.cause());
+        }
+      });
+      try {
+        return future.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+      } catch (InterruptedException e) {
+        call.cancel();
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+
+    @Override
+    public Connection connection() {
+      return null;
+    }
+
+    @Override
+    public int connectTimeoutMillis() {
+      return (int) call.connectTimeout;
+    }
+
+    @Override
+    public Interceptor.Chain withConnectTimeout(int timeout, TimeUnit unit) {
+      return new TimeoutChain(this, millis(timeout, unit), call.idleTimeout, call.writeTimeout);
+    }
+
+    @Override
+    public int readTimeoutMillis() {
+      return (int) call.idleTimeout;
+    }
+
+    @Override
+    public Interceptor.Chain withReadTimeout(int timeout, TimeUnit unit) {
+      return new TimeoutChain(this, call.connectTimeout, millis(timeout, unit), call.writeTimeout);
+    }
+
+    @Override
+    public int writeTimeoutMillis() {
+      return (int) call.writeTimeout;
+    }
+
+    @Override
+    public Interceptor.Chain withWriteTimeout(int timeout, TimeUnit unit) {
+      return new TimeoutChain(this, call.connectTimeout, call.idleTimeout, millis(timeout, unit));
+    }
+  }
+
+  /**
+   * A copy of an interceptor chain overriding the timeouts of the call when it proceeds, the read timeout is the
+   * idle timeout of the call.
+   */
+  private static class TimeoutChain implements Interceptor.Chain {
+
+    private final InterceptorChain chain;
+    private final long connectTimeout;
+    private final long readTimeout;
+    private final long writeTimeout;
+
+    TimeoutChain(InterceptorChain chain, long connectTimeout, long readTimeout, long writeTimeout) {
+      this.chain = chain;
+      this.connectTimeout = connectTimeout;
+      this.readTimeout = readTimeout;
+      this.writeTimeout = writeTimeout;
+    }
+
+    @Override
+    public Request request() {
+      return chain.request();
+    }
+
+    @Override
+    public Response proceed(Request request) throws IOException {
+      chain.call.timeouts(connectTimeout, readTimeout, writeTimeout);
+      return chain.proceed(request);
+    }
+
+    @Override
+    public Connection connection() {
+      return null;
+    }
+
+    @Override
+    public okhttp3.Call call() {
+      return chain.call();
+    }
+
+    @Override
+    public int connectTimeoutMillis() {
+      return (int) connectTimeout;
+    }
+
+    @Override
+    public Interceptor.Chain withConnectTimeout(int timeout, TimeUnit unit) {
+      return new TimeoutChain(chain, millis(timeout, unit), readTimeout, writeTimeout);
+    }
+
+    @Override
+    public int readTimeoutMillis() {
+      return (int) readTimeout;
+    }
+
+    @Override
+    public Interceptor.Chain withReadTimeout(int timeout, TimeUnit unit) {
+      return new TimeoutChain(chain, connectTimeout, millis(timeout, unit), writeTimeout);
+    }
+
+    @Override
+    public int writeTimeoutMillis() {
+      return (int) writeTimeout;
+    }
+
+    @Override
+    public Interceptor.Chain withWriteTimeout(int timeout, TimeUnit unit) {
+      return new TimeoutChain(chain, connectTimeout, readTimeout, millis(timeout, unit));
+    }
+  }
+
+  /**
+   * Report an exception thrown by a callback to the exception handler of the context or of Vert.x, it is logged
+   * when none is set.
+   */
+  private void reportException(Context context, Throwable failure) {
+    Handler<Throwable> handler = context.exceptionHandler();
+    if (handler == null) {
+      handler = vertx().exceptionHandler();
+    }
+    if (handler != null) {
+      handler.handle(failure);
+    } else {
+      log.error("Unhandled exception", failure);
+    }
+  }
+
+  private static long millis(int timeout, TimeUnit unit) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("timeout < 0");
+    }
+    if (unit == null) {
+      throw new NullPointerException("unit == null");
+    }
+    return unit.toMillis(timeout);
+  }
+
+  /**
+   * Run blocking code, e.g synchronous Retrofit calls, on the blocking executor of the options or on the Vert.x worker
+   * pool when none is configured. The {@code resultHandler} is called on the caller context.
+   *
+   * @param blockingCode the blocking code
+   * @param resultHandler the handler called with the result
+   */
+  public <T> void executeBlocking(Callable<T> blockingCode, Handler<AsyncResult<T>> resultHandler) {
+    Context current = Vertx.currentContext();
+    Context ctx = current != null ? current : vertx().getOrCreateContext();
+    Executor executor = options.getBlockingExecutor();
+    if (executor == null) {
+      ctx.executeBlocking(p -> {
+        try {
+          p.complete(blockingCode.call());
+        } catch (Exception e) {
+          p.fail(e);
+        }
+      }, false, resultHandler);
+    } else {
+      executor.execute(() -> {
+        AsyncResult<T> result;
+        try {
+          result = Future.succeededFuture(blockingCode.call());
+        } catch (Exception e) {
+          result = Future.failedFuture(e);
+        }
+        AsyncResult<T> ar = result;
+        ctx.runOnContext(v -> resultHandler.handle(ar));
+      });
+    }
+  }
+
+  /**
+   * Bridge Vert.x headers to okhttp headers in a single pass: the headers were validated by the Vert.x decoder, the
+   * values are added without rejecting their non ASCII characters like OkHttp does for the headers it receives from
+   * the network.
+   */
+  static Headers headers(MultiMap headers) {
+    Headers.Builder builder = new Headers.Builder();
+    for (Map.Entry<String, String> header : headers) {
+      builder.addUnsafeNonAscii(header.getKey(), header.getValue());
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return the okhttp protocol of the {@code version} negotiated by the client, cleartext HTTP/2 is reported
+   *         as {@link Protocol#H2_PRIOR_KNOWLEDGE} like OkHttp does
+   */
+  private static Protocol protocol(HttpVersion version, boolean ssl) {
+    switch (version) {
+      case HTTP_1_0:
+        return Protocol.HTTP_1_0;
+      case HTTP_2:
+        return ssl ? Protocol.HTTP_2 : Protocol.H2_PRIOR_KNOWLEDGE;
+      default:
+        return Protocol.HTTP_1_1;
+    }
+  }
+
+  private static long resolveTimeout(long callValue, long factoryValue) {
+    return callValue >= 0 ? callValue : factoryValue;
   }
 
   @Override
   public okhttp3.Call newCall(Request request) {
-    return new VertxCall(request);
+    return new VertxCall(request, false, options.isCoalescing(), false);
   }
 }
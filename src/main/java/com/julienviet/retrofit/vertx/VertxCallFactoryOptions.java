@@ -0,0 +1,550 @@
+package com.julienviet.retrofit.vertx;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Options configuring a {@link VertxCallFactory}.
+ *
+ * Timeouts are expressed in milliseconds, a {@code 0} value disables the timeout.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class VertxCallFactoryOptions {
+
+  /**
+   * The default connect timeout = 10000 ms
+   */
+  public static final long DEFAULT_CONNECT_TIMEOUT = 10000;
+
+  /**
+   * The default response headers timeout = 0 (disabled)
+   */
+  public static final long DEFAULT_RESPONSE_HEADERS_TIMEOUT = 0;
+
+  /**
+   * The default idle timeout = 10000 ms
+   */
+  public static final long DEFAULT_IDLE_TIMEOUT = 10000;
+
+  /**
+   * The default call timeout = 0 (disabled)
+   */
+  public static final long DEFAULT_CALL_TIMEOUT = 0;
+
+  /**
+   * The default write timeout = 10000 ms
+   */
+  public static final long DEFAULT_WRITE_TIMEOUT = 10000;
+
+  /**
+   * The default compression = false
+   */
+  public static final boolean DEFAULT_COMPRESSION = false;
+
+  /**
+   * The default request compression threshold = -1 (disabled)
+   */
+  public static final long DEFAULT_REQUEST_COMPRESSION_THRESHOLD = -1;
+
+  /**
+   * The default max in-memory body size = -1 (unbounded)
+   */
+  public static final long DEFAULT_MAX_IN_MEMORY_BODY_SIZE = -1;
+
+  /**
+   * The default max body size = -1 (unbounded)
+   */
+  public static final long DEFAULT_MAX_BODY_SIZE = -1;
+
+  /**
+   * The default coalescing key: the method, the url and the headers of the request
+   */
+  public static final Function<Request, String> DEFAULT_COALESCING_KEY = request -> request.method() + " " + request.url() + "\n" + request.headers();
+
+  private long connectTimeout;
+  private long responseHeadersTimeout;
+  private long idleTimeout;
+  private long callTimeout;
+  private long writeTimeout;
+  private Executor blockingExecutor;
+  private ResponseCache responseCache;
+  private boolean coalescing;
+  private Function<Request, String> coalescingKey;
+  private CallMetrics<?> metrics;
+  private CallListener callListener;
+  private RetryPolicy retryPolicy;
+  private ConcurrencyLimitOptions concurrencyLimit;
+  private RateLimitOptions rateLimit;
+  private boolean compression;
+  private long requestCompressionThreshold;
+  private long maxInMemoryBodySize;
+  private long maxBodySize;
+  private List<VertxInterceptor> interceptors;
+  private List<VertxInterceptor> networkInterceptors;
+
+  public VertxCallFactoryOptions() {
+    connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    responseHeadersTimeout = DEFAULT_RESPONSE_HEADERS_TIMEOUT;
+    idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    callTimeout = DEFAULT_CALL_TIMEOUT;
+    writeTimeout = DEFAULT_WRITE_TIMEOUT;
+    coalescingKey = DEFAULT_COALESCING_KEY;
+    compression = DEFAULT_COMPRESSION;
+    requestCompressionThreshold = DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+    maxInMemoryBodySize = DEFAULT_MAX_IN_MEMORY_BODY_SIZE;
+    maxBodySize = DEFAULT_MAX_BODY_SIZE;
+    interceptors = new ArrayList<>();
+    networkInterceptors = new ArrayList<>();
+  }
+
+  public VertxCallFactoryOptions(VertxCallFactoryOptions other) {
+    connectTimeout = other.connectTimeout;
+    responseHeadersTimeout = other.responseHeadersTimeout;
+    idleTimeout = other.idleTimeout;
+    callTimeout = other.callTimeout;
+    writeTimeout = other.writeTimeout;
+    blockingExecutor = other.blockingExecutor;
+    responseCache = other.responseCache;
+    coalescing = other.coalescing;
+    coalescingKey = other.coalescingKey;
+    metrics = other.metrics;
+    callListener = other.callListener;
+    retryPolicy = other.retryPolicy != null ? new RetryPolicy(other.retryPolicy) : null;
+    concurrencyLimit = other.concurrencyLimit != null ? new ConcurrencyLimitOptions(other.concurrencyLimit) : null;
+    rateLimit = other.rateLimit != null ? new RateLimitOptions(other.rateLimit) : null;
+    compression = other.compression;
+    requestCompressionThreshold = other.requestCompressionThreshold;
+    maxInMemoryBodySize = other.maxInMemoryBodySize;
+    maxBodySize = other.maxBodySize;
+    interceptors = new ArrayList<>(other.interceptors);
+    networkInterceptors = new ArrayList<>(other.networkInterceptors);
+  }
+
+  /**
+   * @return the connect timeout
+   */
+  public long getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * Set the maximum time a call waits for a connection, this includes the time spent in the client pool.
+   *
+   * @param connectTimeout the timeout in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setConnectTimeout(long connectTimeout) {
+    this.connectTimeout = checkTimeout(connectTimeout);
+    return this;
+  }
+
+  /**
+   * @return the response headers timeout
+   */
+  public long getResponseHeadersTimeout() {
+    return responseHeadersTimeout;
+  }
+
+  /**
+   * Set the maximum time a call waits for the response headers after the request is sent.
+   *
+   * @param responseHeadersTimeout the timeout in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setResponseHeadersTimeout(long responseHeadersTimeout) {
+    this.responseHeadersTimeout = checkTimeout(responseHeadersTimeout);
+    return this;
+  }
+
+  /**
+   * @return the idle timeout
+   */
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Set the maximum time a call can wait for response data.
+   *
+   * @param idleTimeout the timeout in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setIdleTimeout(long idleTimeout) {
+    this.idleTimeout = checkTimeout(idleTimeout);
+    return this;
+  }
+
+  /**
+   * @return the call timeout
+   */
+  public long getCallTimeout() {
+    return callTimeout;
+  }
+
+  /**
+   * Set the maximum time of a call, from the moment it is enqueued until its response body is received.
+   *
+   * @param callTimeout the timeout in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setCallTimeout(long callTimeout) {
+    this.callTimeout = checkTimeout(callTimeout);
+    return this;
+  }
+
+  /**
+   * @return the write timeout
+   */
+  public long getWriteTimeout() {
+    return writeTimeout;
+  }
+
+  /**
+   * Set the maximum time the writer of a request body waits for the request to drain. The write timeout cannot be
+   * disabled, a writer waiting for a request that does not drain would hold its thread.
+   *
+   * @param writeTimeout the timeout in ms
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setWriteTimeout(long writeTimeout) {
+    if (writeTimeout <= 0) {
+      throw new IllegalArgumentException("Write timeout must be > 0");
+    }
+    this.writeTimeout = writeTimeout;
+    return this;
+  }
+
+  /**
+   * @return the executor running blocking code
+   */
+  public Executor getBlockingExecutor() {
+    return blockingExecutor;
+  }
+
+  /**
+   * Set the executor running the blocking code of {@link VertxCallFactory#executeBlocking}, e.g an executor creating
+   * a virtual thread per task. When no executor is set, the blocking code runs on the Vert.x worker pool.
+   *
+   * @param blockingExecutor the executor
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setBlockingExecutor(Executor blockingExecutor) {
+    this.blockingExecutor = blockingExecutor;
+    return this;
+  }
+
+  /**
+   * @return the response cache
+   */
+  public ResponseCache getResponseCache() {
+    return responseCache;
+  }
+
+  /**
+   * Set the cache storing the responses, when no cache is set responses are not cached.
+   *
+   * @param responseCache the cache
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setResponseCache(ResponseCache responseCache) {
+    this.responseCache = responseCache;
+    return this;
+  }
+
+  /**
+   * @return whether identical in-flight requests are coalesced
+   */
+  public boolean isCoalescing() {
+    return coalescing;
+  }
+
+  /**
+   * Set whether identical in-flight {@code GET} or {@code HEAD} requests are coalesced: concurrent calls with
+   * the same {@link #setCoalescingKey coalescing key} share a single HTTP request and its response body.
+   *
+   * @param coalescing whether to coalesce requests
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setCoalescing(boolean coalescing) {
+    this.coalescing = coalescing;
+    return this;
+  }
+
+  /**
+   * @return the coalescing key function
+   */
+  public Function<Request, String> getCoalescingKey() {
+    return coalescingKey;
+  }
+
+  /**
+   * Set the function computing the key identifying coalesced requests, a {@code null} key excludes the request
+   * from coalescing.
+   *
+   * @param coalescingKey the key function
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setCoalescingKey(Function<Request, String> coalescingKey) {
+    if (coalescingKey == null) {
+      throw new NullPointerException("No null coalescing key");
+    }
+    this.coalescingKey = coalescingKey;
+    return this;
+  }
+
+  /**
+   * @return the call metrics
+   */
+  public CallMetrics<?> getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Set the metrics recording the calls, e.g a {@link DefaultCallMetrics}.
+   *
+   * @param metrics the metrics
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setMetrics(CallMetrics<?> metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * @return the call listener
+   */
+  public CallListener getCallListener() {
+    return callListener;
+  }
+
+  /**
+   * Set the listener notified of the phases of the calls.
+   *
+   * @param callListener the listener
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setCallListener(CallListener callListener) {
+    this.callListener = callListener;
+    return this;
+  }
+
+  /**
+   * @return the retry policy
+   */
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * Set the policy retrying and hedging the calls of idempotent methods, when no policy is set calls are sent once.
+   *
+   * @param retryPolicy the policy
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+    return this;
+  }
+
+  /**
+   * @return the concurrency limit options
+   */
+  public ConcurrencyLimitOptions getConcurrencyLimit() {
+    return concurrencyLimit;
+  }
+
+  /**
+   * Set the options of the adaptive concurrency limit of each host, when no options are set the concurrency is
+   * only limited by the client pool.
+   *
+   * @param concurrencyLimit the options
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setConcurrencyLimit(ConcurrencyLimitOptions concurrencyLimit) {
+    this.concurrencyLimit = concurrencyLimit;
+    return this;
+  }
+
+  /**
+   * @return the rate limit options
+   */
+  public RateLimitOptions getRateLimit() {
+    return rateLimit;
+  }
+
+  /**
+   * Set the options of the rate limit of the calls, when no options are set the calls are not rate limited.
+   *
+   * @param rateLimit the options
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setRateLimit(RateLimitOptions rateLimit) {
+    this.rateLimit = rateLimit;
+    return this;
+  }
+
+  /**
+   * @return whether responses are transparently decompressed
+   */
+  public boolean isCompression() {
+    return compression;
+  }
+
+  /**
+   * Set whether the requests advertise {@code gzip} and {@code deflate} with an {@code Accept-Encoding} header and
+   * the compressed responses are transparently decompressed. A request setting its own {@code Accept-Encoding}
+   * header receives the response as is.
+   *
+   * @param compression whether to decompress responses
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setCompression(boolean compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  /**
+   * @return the request compression threshold
+   */
+  public long getRequestCompressionThreshold() {
+    return requestCompressionThreshold;
+  }
+
+  /**
+   * Set the size above which request bodies are compressed with {@code gzip}, bodies of unknown length are always
+   * compressed. A {@code -1} value disables request compression, the server must accept compressed requests.
+   *
+   * @param requestCompressionThreshold the threshold in bytes
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setRequestCompressionThreshold(long requestCompressionThreshold) {
+    if (requestCompressionThreshold < -1) {
+      throw new IllegalArgumentException("Request compression threshold must be >= -1");
+    }
+    this.requestCompressionThreshold = requestCompressionThreshold;
+    return this;
+  }
+
+  /**
+   * @return the max in-memory body size
+   */
+  public long getMaxInMemoryBodySize() {
+    return maxInMemoryBodySize;
+  }
+
+  /**
+   * Set the max size of a response body buffered in memory, a larger body is spilled to a temporary file read
+   * through memory mappings. A {@code -1} value buffers all bodies in memory.
+   *
+   * @param maxInMemoryBodySize the size in bytes
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setMaxInMemoryBodySize(long maxInMemoryBodySize) {
+    this.maxInMemoryBodySize = checkSize(maxInMemoryBodySize);
+    return this;
+  }
+
+  /**
+   * @return the max body size
+   */
+  public long getMaxBodySize() {
+    return maxBodySize;
+  }
+
+  /**
+   * Set the max size of a response body, a call receiving a larger body fails as soon as the {@code Content-Length}
+   * header or the bytes received exceed it. The size of a decompressed body is the size of its decompressed bytes.
+   * A {@code -1} value does not limit the body size.
+   *
+   * @param maxBodySize the size in bytes
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions setMaxBodySize(long maxBodySize) {
+    this.maxBodySize = checkSize(maxBodySize);
+    return this;
+  }
+
+  /**
+   * @return the application interceptors
+   */
+  public List<VertxInterceptor> getInterceptors() {
+    return interceptors;
+  }
+
+  /**
+   * Add an application interceptor, the application interceptors are called once per call before the response cache,
+   * the request coalescing and the retries.
+   *
+   * @param interceptor the interceptor
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions addInterceptor(VertxInterceptor interceptor) {
+    if (interceptor == null) {
+      throw new NullPointerException("interceptor == null");
+    }
+    interceptors.add(interceptor);
+    return this;
+  }
+
+  /**
+   * Add an OkHttp application interceptor, see {@link VertxInterceptor#of(Interceptor)}.
+   *
+   * @param interceptor the interceptor
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions addInterceptor(Interceptor interceptor) {
+    return addInterceptor(VertxInterceptor.of(interceptor));
+  }
+
+  /**
+   * @return the network interceptors
+   */
+  public List<VertxInterceptor> getNetworkInterceptors() {
+    return networkInterceptors;
+  }
+
+  /**
+   * Add a network interceptor, the network interceptors are called for each request sent to the network, e.g a
+   * retried request or a cache revalidation, they are not called for a response served by the cache.
+   *
+   * @param interceptor the interceptor
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions addNetworkInterceptor(VertxInterceptor interceptor) {
+    if (interceptor == null) {
+      throw new NullPointerException("interceptor == null");
+    }
+    networkInterceptors.add(interceptor);
+    return this;
+  }
+
+  /**
+   * Add an OkHttp network interceptor, see {@link VertxInterceptor#of(Interceptor)}.
+   *
+   * @param interceptor the interceptor
+   * @return a reference to this, so the API can be used fluently
+   */
+  public VertxCallFactoryOptions addNetworkInterceptor(Interceptor interceptor) {
+    return addNetworkInterceptor(VertxInterceptor.of(interceptor));
+  }
+
+  private static long checkSize(long size) {
+    if (size < -1) {
+      throw new IllegalArgumentException("Size must be >= -1");
+    }
+    return size;
+  }
+
+  static long checkTimeout(long timeout) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Timeout must be >= 0");
+    }
+    return timeout;
+  }
+}
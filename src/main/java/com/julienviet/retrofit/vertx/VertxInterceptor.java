@@ -0,0 +1,70 @@
+package com.julienviet.retrofit.vertx;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * An asynchronous interceptor of the calls of a {@link VertxCallFactory}, e.g to add authentication headers, sign
+ * requests or trace calls without blocking the event loop.
+ *
+ * An interceptor proceeds with the request, possibly rewritten, and completes its {@code handler} with the response,
+ * possibly rewritten:
+ *
+ * <pre>
+ *   (chain, handler) -&gt; chain.proceed(chain.request().newBuilder().header("Authorization", token).build(), handler)
+ * </pre>
+ *
+ * An interceptor can also complete the {@code handler} without proceeding. An interceptor proceeds at most once,
+ * the interceptors of a call share a single chain object.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+@FunctionalInterface
+public interface VertxInterceptor {
+
+  /**
+   * Adapt an OkHttp {@link Interceptor}, its synchronous {@code proceed} blocks so it is run on the blocking executor
+   * of the factory, or the Vert.x worker pool, when the call is on an event loop. The thread is held until the response
+   * is received, the next OkHttp interceptors of the chain run on the same thread.
+   *
+   * @param interceptor the OkHttp interceptor
+   * @return the adapted interceptor
+   */
+  static VertxInterceptor of(Interceptor interceptor) {
+    return new OkHttpInterceptor(interceptor);
+  }
+
+  /**
+   * Intercept a call, this is executed on the call context.
+   *
+   * @param chain the chain of the call
+   * @param handler the handler to complete with the response
+   */
+  void intercept(Chain chain, Handler<AsyncResult<Response>> handler);
+
+  interface Chain {
+
+    /**
+     * @return the request of the call
+     */
+    Request request();
+
+    /**
+     * @return the call
+     */
+    okhttp3.Call call();
+
+    /**
+     * Proceed with the {@code request} to the next interceptor or the network, the {@code handler} is called on the
+     * call context with the response.
+     *
+     * @param request the request
+     * @param handler the response handler
+     */
+    void proceed(Request request, Handler<AsyncResult<Response>> handler);
+
+  }
+}
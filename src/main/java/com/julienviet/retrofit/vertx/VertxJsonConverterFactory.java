@@ -0,0 +1,113 @@
+package com.julienviet.retrofit.vertx;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.json.jackson.DatabindCodec;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Retrofit converter factory using the Jackson mapper bundled with Vert.x, it also converts the Vert.x
+ * {@link JsonObject} and {@link JsonArray} types.
+ *
+ * Request bodies are encoded straight into a Netty buffer sent as a {@link BufferRequestBody}, the
+ * {@link VertxCallFactory} writes it to the request without copying it. The buffer is not pooled: a request body can
+ * be sent several times, e.g when a call is retried, and is released by the garbage collector.
+ *
+ * Response bodies are decoded from their bytes by the Jackson parser. The elements of a {@code ReadStream} are parsed
+ * directly from their Netty buffer. Retrofit wraps the body of a call, a body buffered by the {@link VertxCallFactory}
+ * is then read through the okio source of its Netty buffer, without copying it to a byte array first.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class VertxJsonConverterFactory extends Converter.Factory {
+
+  private static final MediaType MEDIA_TYPE = MediaType.get("application/json; charset=UTF-8");
+
+  /**
+   * @return a factory using the Vert.x {@link DatabindCodec#mapper()}
+   */
+  public static VertxJsonConverterFactory create() {
+    return create(DatabindCodec.mapper());
+  }
+
+  /**
+   * @param mapper the Jackson mapper
+   * @return a factory using the {@code mapper}
+   */
+  public static VertxJsonConverterFactory create(ObjectMapper mapper) {
+    if (mapper == null) {
+      throw new NullPointerException("mapper == null");
+    }
+    return new VertxJsonConverterFactory(mapper);
+  }
+
+  private final ObjectMapper mapper;
+
+  private VertxJsonConverterFactory(ObjectMapper mapper) {
+    this.mapper = mapper;
+  }
+
+  @Override
+  public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+    if (type == JsonObject.class) {
+      ObjectReader reader = mapper.readerFor(Map.class);
+      return body -> new JsonObject(this.<Map<String, Object>>read(reader, body));
+    } else if (type == JsonArray.class) {
+      ObjectReader reader = mapper.readerFor(List.class);
+      return body -> new JsonArray(this.<List<Object>>read(reader, body));
+    }
+    JavaType javaType = mapper.getTypeFactory().constructType(type);
+    ObjectReader reader = mapper.readerFor(javaType);
+    return body -> read(reader, body);
+  }
+
+  private <T> T read(ObjectReader reader, ResponseBody body) throws IOException {
+    // Jackson detects the encoding and decodes the bytes itself
+    try (ResponseBody b = body) {
+      if (b instanceof BufferResponseBody) {
+        InputStream in = new ByteBufInputStream(((BufferResponseBody) b).buffer().getByteBuf());
+        return reader.readValue(in);
+      }
+      return reader.readValue(b.byteStream());
+    }
+  }
+
+  @Override
+  public Converter<?, RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
+    ObjectWriter writer;
+    if (type == JsonObject.class || type == JsonArray.class) {
+      // The Vert.x mapper serializes them, a custom mapper might not
+      writer = DatabindCodec.mapper().writer();
+    } else {
+      writer = mapper.writerFor(mapper.getTypeFactory().constructType(type));
+    }
+    return value -> {
+      ByteBuf buf = Unpooled.buffer();
+      try (OutputStream out = new ByteBufOutputStream(buf)) {
+        writer.writeValue(out, value);
+      }
+      return BufferRequestBody.create(MEDIA_TYPE, Buffer.buffer(buf));
+    };
+  }
+}
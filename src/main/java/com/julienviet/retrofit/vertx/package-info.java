@@ -63,8 +63,307 @@
  * {@link examples.Example#async}
  * ----
  *
+ * The `execute` method cannot be called from an event loop thread since the thread would be blocked waiting for the
+ * response it has to deliver, such call fails with an `IllegalStateException`.
+ *
+ * The factory can run blocking code, e.g synchronous calls, on a configurable executor, such as an executor creating a
+ * virtual thread per task, or on the Vert.x worker pool by default.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#executeBlocking}
+ * ----
+ *
+ * The {@link com.julienviet.retrofit.vertx.VertxCallAdapterFactory} lets service methods return a Vert.x `Future`
+ * completed on the context of the caller.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#future}
+ * ----
+ *
+ * A `Future<T>` is failed with a Retrofit `HttpException` when the response is not successful, a
+ * `Future<Response<T>>` is completed with the response whatever its status.
+ *
  * Vert.x concurrency model is based on the reactor pattern, you can read more at http://vertx.io/docs/vertx-core/java/#_reactor_and_multi_reactor
  *
+ * == Event loop affinity
+ *
+ * A call is sent and its callback is called on the context of the caller. When the factory is created with
+ * `HttpClientOptions` instead of a client, it uses a client per event loop: each call uses the client of the event loop
+ * of its context, so verticles do not contend on a single connection pool and the response does not hop between event
+ * loops. The calls of worker contexts share a client.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#clientPerEventLoop}
+ * ----
+ *
+ * == Timeouts
+ *
+ * The factory enforces the timeouts configured by {@link com.julienviet.retrofit.vertx.VertxCallFactoryOptions}
+ * with Vert.x timers:
+ *
+ * - the _connect_ timeout bounds the time to obtain a connection, including the time spent waiting in the pool
+ * - the _response headers_ timeout bounds the time to receive the response headers
+ * - the _idle_ timeout bounds the time without receiving response data
+ * - the _call_ timeout bounds the entire call
+ * - the _write_ timeout bounds the time the writer of a request body waits for the request to drain, it cannot be
+ *   disabled
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#timeouts}
+ * ----
+ *
+ * A call that times out is cancelled. The timeouts can be overridden for a call with a
+ * {@link com.julienviet.retrofit.vertx.CallOptions} request tag, e.g with a `@Tag CallOptions options` method parameter.
+ *
+ * == Caching
+ *
+ * The factory can cache responses with a {@link com.julienviet.retrofit.vertx.ResponseCache} following the HTTP
+ * caching semantics: `Cache-Control`, `Expires`, conditional requests with `ETag` and `Last-Modified`, `Vary`
+ * and `stale-while-revalidate`.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#cache}
+ * ----
+ *
+ * A fresh response is served without using the `HttpClient`, a stale response is revalidated with a conditional request
+ * or served while it is revalidated in the background when the response allows it, a single background revalidation
+ * of a response is in flight at a time.
+ *
+ * The cache keeps the entries in a size bounded in-heap LRU tier and optionally in a disk tier whose files are mapped
+ * on a worker thread, the body is served from the mapping. The cache reports its hit, miss and revalidation counts.
+ *
+ * NOTE: only `GET` responses are cached, `@Streaming` responses are not stored
+ *
+ * == Coalescing requests
+ *
+ * Concurrent identical `GET` or `HEAD` calls can share a single HTTP request, e.g to avoid a burst of requests
+ * when many cached responses expire at once.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#coalescing}
+ * ----
+ *
+ * The calls with the same coalescing key share the response body, by default the key is made of the method, the url
+ * and the headers of the request. A cancelled call leaves the shared request, which is cancelled when no calls wait for
+ * its response anymore.
+ *
+ * NOTE: calls with a body and `@Streaming` calls are not coalesced
+ *
+ * == Retries and hedging
+ *
+ * A {@link com.julienviet.retrofit.vertx.RetryPolicy} retries the calls of idempotent methods failing to obtain a
+ * connection and can hedge them to cut the tail latency: when the response takes longer than a percentile of the
+ * latencies observed for the service method, a second request is sent, the first response wins and the other
+ * request is cancelled.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#retryPolicy}
+ * ----
+ *
+ * Retries and hedges withdraw a token from a budget each call refills by a fraction of token, so they cannot amplify
+ * an outage. The hedge and the retry backoff are scheduled with Vert.x timers on the call context.
+ *
+ * NOTE: only `GET`, `HEAD`, `OPTIONS`, `PUT`, `DELETE` and `TRACE` calls are retried, `@Streaming` calls are sent once
+ *
+ * == Concurrency limit
+ *
+ * When a host slows down the calls pile up in the client pool waiting queue. The factory can instead limit the
+ * in-flight requests of each host with a limit learnt from the round trip times of the requests, the calls exceeding
+ * the limit wait in a bounded queue and fail with a {@link com.julienviet.retrofit.vertx.ConcurrencyLimitException}
+ * when the queue is full or the queue timeout is reached.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#concurrencyLimit}
+ * ----
+ *
+ * The {@link com.julienviet.retrofit.vertx.LimitAlgorithm#AIMD} algorithm reduces the limit when a request fails or the
+ * host responds with `429` or `503`, the {@link com.julienviet.retrofit.vertx.LimitAlgorithm#VEGAS} algorithm also
+ * reduces it when the round trip time grows. Rejected calls are not retried.
+ *
+ * == Rate limit
+ *
+ * Rate limited APIs reject the bursts of calls with `429` responses. The factory can rate limit the calls with a token
+ * bucket per host or per service method: the calls finding no token wait in a bounded queue released by Vert.x timers,
+ * without blocking threads, and fail with a {@link com.julienviet.retrofit.vertx.RateLimitException} when the queue is
+ * full or they would wait longer than the max wait.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#rateLimit}
+ * ----
+ *
+ * The `Retry-After` header of a `429` or `503` response and the `X-RateLimit-Reset` header of a response with
+ * `X-RateLimit-Remaining: 0` pause the calls until the upstream rate limit is reset. Rejected calls are not retried.
+ *
+ * == Compression
+ *
+ * The factory can advertise `gzip` and `deflate` with an `Accept-Encoding` header and transparently decompress the
+ * responses: the `Content-Encoding` and `Content-Length` headers are removed from the response like OkHttp does.
+ * Request bodies larger than a threshold can also be compressed with `gzip`.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#compression}
+ * ----
+ *
+ * A buffered response body is decompressed when it is received, a `@Streaming` body is decompressed as it is read.
+ * The max body size applies to the decompressed bytes: a call fails as soon as the inflated body exceeds it.
+ * The {@link com.julienviet.retrofit.vertx.DefaultCallMetrics} records the compression ratio of the bodies.
+ *
+ * NOTE: a request setting its own `Accept-Encoding` header receives the response as is
+ *
+ * == Large responses
+ *
+ * A buffered response body is kept in memory up to a max in-memory size, a larger body is spilled to a temporary file
+ * that is memory mapped when the converter reads it. A max body size rejects the larger responses early: when the
+ * `Content-Length` header exceeds it or as soon as the bytes received exceed it.
+ *
+ * A call can also write the response body to an `AsyncFile` with {@link com.julienviet.retrofit.vertx.CallOptions},
+ * the body is written with back-pressure and the call completes with an empty body once the file is flushed. Such
+ * a call is neither coalesced nor hedged, a single request writes to the file.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#largeResponses}
+ * ----
+ *
+ * The temporary file is deleted once opened for reading, its storage is released when the body is closed.
+ * A `@Streaming` body is only checked against the `Content-Length` header and the spilled bodies are not cached.
+ *
+ * == File uploads
+ *
+ * A {@link com.julienviet.retrofit.vertx.FileRequestBody} sends a file or a region of a file, the factory pipes it to
+ * the request with an `AsyncFile` and back-pressure: the file is read by the event loop and is not copied to okio
+ * buffers.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#fileUpload}
+ * ----
+ *
+ * NOTE: the Vert.x HTTP client cannot send a request body with `sendfile`, a compressed request body is written
+ * by `RequestBody#writeTo`
+ *
+ * == JSON converter
+ *
+ * The {@link com.julienviet.retrofit.vertx.VertxJsonConverterFactory} converts JSON bodies with the Jackson mapper
+ * bundled with Vert.x, it also converts the Vert.x `JsonObject` and `JsonArray` types.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#jsonConverter}
+ * ----
+ *
+ * A request body is encoded straight into a Netty buffer that is written to the request as is, like any
+ * {@link com.julienviet.retrofit.vertx.BufferRequestBody}. A buffered response body is decoded by Jackson from the bytes
+ * of the Vert.x buffer without copying it to a byte array first, the elements of a `ReadStream` are parsed directly
+ * from their Netty buffer.
+ *
+ * == Interceptors
+ *
+ * The factory runs application and network interceptors. A {@link com.julienviet.retrofit.vertx.VertxInterceptor}
+ * proceeds with the request asynchronously and completes a handler with the response, OkHttp interceptors are accepted
+ * too.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#interceptors}
+ * ----
+ *
+ * The application interceptors are called once per call, the network interceptors are called for each request sent
+ * to the network and are not called when the response cache serves the response. The interceptors of a call share a
+ * single chain object, so an interceptor proceeds at most once.
+ *
+ * An OkHttp interceptor blocks until the response is received, it is run on the blocking executor of the factory,
+ * or on the Vert.x worker pool, when the call is on an event loop. Its `withConnectTimeout`, `withReadTimeout` and
+ * `withWriteTimeout` chains override the connect, idle and write timeouts of the call.
+ *
+ * NOTE: the thread of an OkHttp interceptor is held until the response is received, the next OkHttp interceptors
+ * of the call run on the same thread. The concurrent calls running OkHttp interceptors are bounded by the worker pool,
+ * the `VertxInterceptor` or a virtual thread blocking executor is preferable for the calls of a busy service
+ *
+ * == Connection warm-up
+ *
+ * The first calls of a service pay for the address resolution and the TCP, TLS and HTTP/2 handshakes of their
+ * connections. The factory can open the connections of the hosts of the services before serving traffic, e.g to
+ * report the service as ready once they are opened.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#warmUp}
+ * ----
+ *
+ * Any response to the `HEAD` request of a connection means the connection is warm, the resolved addresses are cached
+ * by the Vert.x address resolver. With a client per event loop, the client of the caller event loop is warmed up.
+ *
+ * == Metrics
+ *
+ * The factory reports the calls of each Retrofit service method to a {@link com.julienviet.retrofit.vertx.CallMetrics}
+ * implementation: the time waiting for a connection, the time to the first response byte, the total time, the
+ * response status, the bytes sent and received and the in-flight calls.
+ *
+ * The {@link com.julienviet.retrofit.vertx.DefaultCallMetrics} implementation records them per service method
+ * in histograms.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#metrics}
+ * ----
+ *
+ * The metrics are recorded without allocating so they can be left on in production.
+ *
+ * The factory also notifies a {@link com.julienviet.retrofit.vertx.CallListener} of the phases of each call with
+ * nanosecond timestamps: call start, connection established, request headers and body sent, response headers and body
+ * received and call end or failure.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#callListener}
+ * ----
+ *
+ * No event is created when no listener is set.
+ *
+ * NOTE: the name resolution, the TCP connect and the TLS handshake are reported together by `connectEnd` and only for
+ * new connections
+ *
+ * == Streaming responses
+ *
+ * By default the response body is fully buffered before the call completes. A method annotated with
+ * Retrofit `@Streaming` gets instead a body that reads the Vert.x response as it is consumed, the response
+ * is paused when the consumer does not keep up with it.
+ *
+ * NOTE: such body must not be read from the event loop thread that delivers it
+ *
+ * == Streaming elements
+ *
+ * The {@link com.julienviet.retrofit.vertx.VertxCallAdapterFactory} also lets `@Streaming` service methods return a
+ * Vert.x `ReadStream` of the elements of a newline delimited (e.g `application/x-ndjson`) or server-sent events
+ * (`text/event-stream`) response body.
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#readStream}
+ * ----
+ *
+ * The call is sent when the stream handler is set. The body is decoded as it is received on the context of the caller,
+ * each line or event data is converted with the Retrofit converter of the element type, a `ReadStream<Buffer>` gets the
+ * raw elements. The stream demand is propagated to the HTTP response which is paused when no element is requested.
+ *
+ * A line or an event data is buffered until it is complete, the max record size given to {@link com.julienviet.retrofit.vertx.VertxCallAdapterFactory#create(int)}
+ * bounds it: the stream fails and the call is cancelled when a larger one is received.
+ *
+ * A `ReadStream` can be adapted to an RxJava 2 `Flowable` with the Vert.x RxJava 2 `FlowableHelper`.
+ *
+ * NOTE: the response of a `ReadStream` call is not compressed
+ *
  * == Using with RxJava
  *
  * Retrofit provides an RxJava adapter you can use, to use it add the adapter library to your build file:
@@ -84,7 +383,7 @@
  * ----
  * Retrofit retrofit = new Retrofit.Builder()
  *   .baseUrl("https://api.github.com/")
- *   .callFactory(new VertxCallFactory(client))
+ *   .callFactory(new VertxCallFactory(vertx, client))
  *   .addCallAdapterFactory(RxJavaCallAdapterFactory.createAsync())
  *   .build();
  *
@@ -134,6 +433,20 @@
  *
  * You need also to configure ALPN for your JVM, you should http://vertx.io/docs/vertx-core/java/#ssl
  *
+ * The protocol negotiated by the client is reported by the okhttp response, cleartext HTTP/2 is reported as
+ * `H2_PRIOR_KNOWLEDGE` like OkHttp does.
+ *
+ * The number of connections and the number of concurrent streams per connection are configured with the
+ * `http2MaxPoolSize` and `http2MultiplexingLimit` client options. Calls sharing a connection can be prioritized with
+ * the {@link com.julienviet.retrofit.vertx.CallOptions} stream priority:
+ *
+ * [source,java]
+ * ----
+ * {@link examples.Example#http2Tuning(io.vertx.core.Vertx)}
+ * ----
+ *
+ * NOTE: when the factory uses a client per event loop, each event loop has its own connections
+ *
  * == Proxy support
  *
  * You can configure the client to use a _HTTP/1.x CONNECT_, _SOCKS4a_ or _SOCKS5_ proxy.
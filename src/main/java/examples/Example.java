@@ -1,21 +1,48 @@
 package examples;
 
+import com.julienviet.retrofit.vertx.BufferRequestBody;
+import com.julienviet.retrofit.vertx.CallListener;
+import com.julienviet.retrofit.vertx.CallOptions;
+import com.julienviet.retrofit.vertx.ConcurrencyLimiter;
+import com.julienviet.retrofit.vertx.ConcurrencyLimitOptions;
+import com.julienviet.retrofit.vertx.DefaultCallMetrics;
+import com.julienviet.retrofit.vertx.FileRequestBody;
+import com.julienviet.retrofit.vertx.LimitAlgorithm;
+import com.julienviet.retrofit.vertx.RateLimitOptions;
+import com.julienviet.retrofit.vertx.RateLimiter;
+import com.julienviet.retrofit.vertx.ResponseCache;
+import com.julienviet.retrofit.vertx.ResponseCacheOptions;
+import com.julienviet.retrofit.vertx.RetryPolicy;
+import com.julienviet.retrofit.vertx.VertxCallAdapterFactory;
 import com.julienviet.retrofit.vertx.VertxCallFactory;
+import com.julienviet.retrofit.vertx.VertxCallFactoryOptions;
+import com.julienviet.retrofit.vertx.VertxJsonConverterFactory;
 import io.vertx.core.Vertx;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.http.HttpVersion;
+import io.vertx.core.http.StreamPriority;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.JksOptions;
 import io.vertx.core.net.PemTrustOptions;
 import io.vertx.core.net.PfxOptions;
 import io.vertx.core.net.ProxyOptions;
 import io.vertx.core.net.ProxyType;
+import io.vertx.core.streams.ReadStream;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
@@ -29,7 +56,7 @@ public class Example {
 
     Retrofit retrofit = new Retrofit.Builder()
         .baseUrl("https://api.github.com/")
-        .callFactory(new VertxCallFactory(client))
+        .callFactory(new VertxCallFactory(vertx, client))
         .build();
 
     GitHubService service = retrofit.create(GitHubService.class);
@@ -55,6 +82,266 @@ public class Example {
     });
   }
 
+  public void future(Vertx vertx, HttpClient client) {
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(new VertxCallFactory(vertx, client))
+        .addCallAdapterFactory(VertxCallAdapterFactory.create())
+        .build();
+
+    GitHubFutureService service = retrofit.create(GitHubFutureService.class);
+
+    service.listRepos("octocat").setHandler(ar -> {
+      if (ar.succeeded()) {
+        List<Repo> repos = ar.result();
+      } else {
+        // Failure, an HttpException when the response is not successful
+      }
+    });
+  }
+
+  public void readStream(Vertx vertx, HttpClient client) {
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(new VertxCallFactory(vertx, client))
+        .addCallAdapterFactory(VertxCallAdapterFactory.create())
+        .build();
+
+    GitHubStreamService service = retrofit.create(GitHubStreamService.class);
+
+    ReadStream<Repo> repos = service.streamRepos("octocat");
+    repos.pause();
+    repos.handler(repo -> {
+      // Process the repo and ask for the next one
+      repos.fetch(1);
+    });
+    repos.endHandler(v -> {
+      // All repos received
+    });
+    repos.exceptionHandler(err -> {
+      // Failure, an HttpException when the response is not successful
+    });
+    repos.fetch(1);
+  }
+
+  public void timeouts(Vertx vertx, HttpClient client) {
+
+    VertxCallFactoryOptions options = new VertxCallFactoryOptions()
+        .setConnectTimeout(5000)
+        .setIdleTimeout(10000)
+        .setCallTimeout(30000);
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(new VertxCallFactory(vertx, client, options))
+        .build();
+  }
+
+  public void cache(Vertx vertx, HttpClient client) {
+
+    ResponseCache cache = new ResponseCache(new ResponseCacheOptions()
+        .setMaxMemorySize(10 * 1024 * 1024)
+        .setDiskDirectory("/var/cache/my-app")
+        .setMaxDiskSize(100 * 1024 * 1024));
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setResponseCache(cache)))
+        .build();
+  }
+
+  public void coalescing(Vertx vertx, HttpClient client) {
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+            .setCoalescing(true)
+            .setCoalescingKey(request -> request.url().toString())))
+        .build();
+  }
+
+  public void retryPolicy(Vertx vertx, HttpClient client) {
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+            .setRetryPolicy(new RetryPolicy()
+                .setMaxRetries(2)
+                .setHedging(true)
+                .setHedgingPercentile(95))))
+        .build();
+  }
+
+  public void concurrencyLimit(Vertx vertx, HttpClient client) {
+
+    VertxCallFactory factory = new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+        .setConcurrencyLimit(new ConcurrencyLimitOptions()
+            .setAlgorithm(LimitAlgorithm.VEGAS)
+            .setMaxQueueSize(100)
+            .setQueueTimeout(50)));
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(factory)
+        .build();
+
+    // Later
+    ConcurrencyLimiter limiter = factory.concurrencyLimiters().get("api.github.com:443");
+    System.out.println("Limit " + limiter.getLimit() + ", in-flight " + limiter.getInFlight());
+  }
+
+  public void rateLimit(Vertx vertx, HttpClient client) {
+
+    VertxCallFactory factory = new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+        .setRateLimit(new RateLimitOptions()
+            .setKey(RateLimitOptions.METHOD_KEY)
+            .setRate(20)
+            .setBurst(5)
+            .setMaxWait(2000)));
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(factory)
+        .build();
+
+    // Later
+    for (RateLimiter limiter : factory.rateLimiters().values()) {
+      System.out.println(limiter.key() + " queue " + limiter.getQueueSize() + ", p99 wait " + limiter.waitTimes().getValueAtPercentile(99) + " ns");
+    }
+  }
+
+  public void compression(Vertx vertx, HttpClient client) {
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+            .setCompression(true)
+            .setRequestCompressionThreshold(1024)))
+        .build();
+  }
+
+  public void largeResponses(Vertx vertx, HttpClient client) {
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+            .setMaxInMemoryBodySize(1024 * 1024)
+            .setMaxBodySize(1024 * 1024 * 1024)))
+        .build();
+
+    // Write the body of a download to a file instead
+    AsyncFile file = vertx.fileSystem().openBlocking("download.bin", new OpenOptions().setWrite(true));
+    CallOptions download = new CallOptions().setResponseBodyFile(file);
+  }
+
+  public void fileUpload() {
+
+    RequestBody body = FileRequestBody.create(MediaType.parse("application/octet-stream"), new File("upload.bin"));
+
+    // Or a region of the file
+    RequestBody part = FileRequestBody.create(MediaType.parse("application/octet-stream"), new File("upload.bin"), 0, 1024 * 1024);
+  }
+
+  public void jsonConverter(Vertx vertx, HttpClient client) {
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(new VertxCallFactory(vertx, client))
+        .addConverterFactory(VertxJsonConverterFactory.create())
+        .build();
+
+    // A Vert.x buffer can also be sent as is
+    RequestBody body = BufferRequestBody.create(MediaType.parse("application/json"), new JsonObject().put("name", "octocat").toBuffer());
+  }
+
+  public void interceptors(Vertx vertx, HttpClient client, String token) {
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+            .addInterceptor((chain, handler) -> {
+              Request request = chain.request().newBuilder().header("Authorization", "Bearer " + token).build();
+              chain.proceed(request, handler);
+            })
+            // An OkHttp interceptor
+            .addNetworkInterceptor(chain -> {
+              System.out.println("Sending " + chain.request().url());
+              return chain.proceed(chain.request());
+            })))
+        .build();
+  }
+
+  public void warmUp(Vertx vertx, HttpClient client) {
+
+    VertxCallFactory factory = new VertxCallFactory(vertx, client);
+
+    // Open 4 connections to the host of each service before serving traffic
+    factory.warmUp(Arrays.asList("https://api.github.com/", "https://uploads.github.com/"), 4, ar -> {
+      if (ar.succeeded()) {
+        // Report the service as ready
+      }
+    });
+  }
+
+  public void clientPerEventLoop(Vertx vertx) {
+
+    VertxCallFactory factory = new VertxCallFactory(vertx, new HttpClientOptions().setKeepAlive(true));
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(factory)
+        .build();
+
+    // Close the clients of the factory when done
+    factory.close();
+  }
+
+  public void metrics(Vertx vertx, HttpClient client) {
+
+    DefaultCallMetrics metrics = new DefaultCallMetrics();
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setMetrics(metrics)))
+        .build();
+
+    // Later
+    metrics.endpoints().forEach((method, endpoint) -> {
+      long p99 = endpoint.total().getValueAtPercentile(99);
+      long inFlight = endpoint.inFlight();
+    });
+  }
+
+  public void callListener(Vertx vertx, HttpClient client) {
+
+    VertxCallFactory factory = new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+        .setCallListener(new CallListener() {
+          @Override
+          public void responseHeadersEnd(okhttp3.Call call, long nanoTime, int statusCode) {
+            // Response headers received
+          }
+        }));
+  }
+
+  public void executeBlocking(Vertx vertx, HttpClient client, Executor virtualThreadExecutor) {
+
+    VertxCallFactory factory = new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+        .setBlockingExecutor(virtualThreadExecutor));
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("https://api.github.com/")
+        .callFactory(factory)
+        .build();
+
+    GitHubService service = retrofit.create(GitHubService.class);
+
+    factory.executeBlocking(() -> service.listRepos("octocat").execute().body(), ar -> {
+      // Result on the caller context
+    });
+  }
+
   public void ssl(Vertx vertx) {
 
     HttpClient client = vertx.createHttpClient(new HttpClientOptions()
@@ -66,7 +353,7 @@ public class Example {
 
     Retrofit retrofit = new Retrofit.Builder()
         .baseUrl("https://api.github.com/")
-        .callFactory(new VertxCallFactory(client))
+        .callFactory(new VertxCallFactory(vertx, client))
         .build();
 
     GitHubService service = retrofit.create(GitHubService.class);
@@ -106,11 +393,24 @@ public class Example {
 
     Retrofit retrofit = new Retrofit.Builder()
         .baseUrl("https://api.github.com/")
-        .callFactory(new VertxCallFactory(client))
+        .callFactory(new VertxCallFactory(vertx, client))
         .build();
 
     GitHubService service = retrofit.create(GitHubService.class);
   }
+  public void http2Tuning(Vertx vertx) {
+
+    VertxCallFactory factory = new VertxCallFactory(vertx, new HttpClientOptions()
+        .setUseAlpn(true)
+        .setSsl(true)
+        .setProtocolVersion(HttpVersion.HTTP_2)
+        .setHttp2MaxPoolSize(1)
+        .setHttp2MultiplexingLimit(100));
+
+    // Latency critical calls get a higher weight than the bulk transfers
+    CallOptions critical = new CallOptions().setStreamPriority(new StreamPriority().setWeight((short) 256));
+  }
+
 
   public void proxy(Vertx vertx) {
 
@@ -124,7 +424,7 @@ public class Example {
 
     Retrofit retrofit = new Retrofit.Builder()
         .baseUrl("https://api.github.com/")
-        .callFactory(new VertxCallFactory(client))
+        .callFactory(new VertxCallFactory(vertx, client))
         .build();
 
     GitHubService service = retrofit.create(GitHubService.class);
@@ -0,0 +1,15 @@
+package examples;
+
+import io.vertx.core.Future;
+import retrofit2.http.GET;
+import retrofit2.http.Path;
+
+import java.util.List;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public interface GitHubFutureService {
+  @GET("/repos/{owner}/repos")
+  Future<List<Repo>> listRepos(@Path("user") String owner);
+}
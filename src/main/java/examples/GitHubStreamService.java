@@ -0,0 +1,15 @@
+package examples;
+
+import io.vertx.core.streams.ReadStream;
+import retrofit2.http.GET;
+import retrofit2.http.Path;
+import retrofit2.http.Streaming;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public interface GitHubStreamService {
+  @Streaming
+  @GET("/users/{user}/repos")
+  ReadStream<Repo> streamRepos(@Path("user") String user);
+}
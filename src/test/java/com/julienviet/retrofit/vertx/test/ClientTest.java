@@ -1,25 +1,64 @@
 package com.julienviet.retrofit.vertx.test;
 
+import com.julienviet.retrofit.vertx.CallListener;
+import com.julienviet.retrofit.vertx.CallOptions;
+import com.julienviet.retrofit.vertx.ConcurrencyLimitException;
+import com.julienviet.retrofit.vertx.ConcurrencyLimitOptions;
+import com.julienviet.retrofit.vertx.ConcurrencyLimiter;
+import com.julienviet.retrofit.vertx.DefaultCallMetrics;
+import com.julienviet.retrofit.vertx.FileRequestBody;
+import com.julienviet.retrofit.vertx.Histogram;
+import com.julienviet.retrofit.vertx.LimitAlgorithm;
+import com.julienviet.retrofit.vertx.RateLimitException;
+import com.julienviet.retrofit.vertx.RateLimitOptions;
+import com.julienviet.retrofit.vertx.RateLimiter;
+import com.julienviet.retrofit.vertx.ResponseCache;
+import com.julienviet.retrofit.vertx.ResponseCacheOptions;
+import com.julienviet.retrofit.vertx.RetryPolicy;
+import com.julienviet.retrofit.vertx.VertxCallAdapterFactory;
 import com.julienviet.retrofit.vertx.VertxCallFactory;
+import com.julienviet.retrofit.vertx.VertxCallFactoryOptions;
+import com.julienviet.retrofit.vertx.VertxJsonConverterFactory;
 import io.netty.handler.codec.TooLongFrameException;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
 import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpConnection;
+import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.http.StreamPriority;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.NetSocket;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import okhttp3.Headers;
+import okhttp3.Interceptor;
 import okhttp3.MediaType;
+import okhttp3.Protocol;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import retrofit2.Call;
+import retrofit2.HttpException;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
@@ -27,10 +66,23 @@ import retrofit2.converter.gson.GsonConverterFactory;
 import retrofit2.http.*;
 import rx.Single;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.assertEquals;
 
@@ -68,7 +120,7 @@ public class ClientTest {
     vertx = Vertx.vertx();
     client = vertx.createHttpClient();
     retrofit = new Retrofit.Builder()
-        .callFactory(new VertxCallFactory(client))
+        .callFactory(new VertxCallFactory(vertx, client))
         .baseUrl(API_URL)
         .addConverterFactory(GsonConverterFactory.create())
         .addCallAdapterFactory(RxJavaCallAdapterFactory.createAsync())
@@ -126,6 +178,60 @@ public class ClientTest {
     assertEquals(30, contributors.size());
   }
 
+  @Test
+  public void testSyncOnEventLoop(TestContext ctx) throws Exception {
+    startHttpServer();
+    Async async = ctx.async();
+    vertx.runOnContext(v -> {
+      Call<List<Contributor>> syncCall = retrofit.create(GitHub.class).contributors("square", "retrofit");
+      try {
+        syncCall.execute();
+        ctx.fail();
+      } catch (IllegalStateException ignore) {
+        async.complete();
+      } catch (IOException e) {
+        ctx.fail(e);
+      }
+    });
+  }
+
+  @Test
+  public void testExecuteBlocking(TestContext ctx) throws Exception {
+    startHttpServer();
+    VertxCallFactory factory = new VertxCallFactory(vertx, client);
+    retrofit = retrofit.newBuilder().callFactory(factory).build();
+    Async async = ctx.async();
+    vertx.runOnContext(v -> {
+      Context context = Vertx.currentContext();
+      factory.executeBlocking(() -> retrofit.create(GitHub.class).contributors("square", "retrofit").execute().body(), ctx.asyncAssertSuccess(contributors -> {
+        ctx.assertEquals(context, Vertx.currentContext());
+        ctx.assertEquals(30, contributors.size());
+        async.complete();
+      }));
+    });
+  }
+
+  @Test
+  public void testExecuteBlockingWithExecutor(TestContext ctx) throws Exception {
+    startHttpServer();
+    ExecutorService executor = Executors.newCachedThreadPool();
+    VertxCallFactory factory = new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setBlockingExecutor(executor));
+    retrofit = retrofit.newBuilder().callFactory(factory).build();
+    Async async = ctx.async(10);
+    vertx.runOnContext(v -> {
+      Context context = Vertx.currentContext();
+      for (int i = 0;i < 10;i++) {
+        factory.executeBlocking(() -> retrofit.create(GitHub.class).contributors("square", "retrofit").execute().body(), ctx.asyncAssertSuccess(contributors -> {
+          ctx.assertEquals(context, Vertx.currentContext());
+          ctx.assertEquals(30, contributors.size());
+          async.countDown();
+        }));
+      }
+    });
+    async.awaitSuccess(10000);
+    executor.shutdown();
+  }
+
   @Test
   public void testConnectError(TestContext ctx) throws Exception {
     Call<List<Contributor>> asyncCall = retrofit.create(GitHub.class).contributors("square", "retrofit");
@@ -200,6 +306,7 @@ public class ClientTest {
       req.response()
           .putHeader("header", "header_value")
           .putHeader("headers", Arrays.<String>asList("header_value_1", "header_value_2"))
+          .putHeader("latin", "caf\u00e9")
           .end();
     });
     Call<ResponseBody> asyncCall = retrofit.create(ReceiveHeaders.class).send();
@@ -207,6 +314,9 @@ public class ClientTest {
     Headers headers = response.headers();
     assertEquals("header_value", headers.get("header"));
     assertEquals(Arrays.asList("header_value_1", "header_value_2"), headers.values("headers"));
+    // Received headers are not validated again, like OkHttp does
+    assertEquals("caf\u00e9", headers.get("latin"));
+    assertEquals(Arrays.asList("header", "headers", "headers", "latin", "content-length"), Arrays.asList(headers.name(0), headers.name(1), headers.name(2), headers.name(3), headers.name(4)));
   }
   public interface SendBody {
     @PUT("/") //
@@ -227,6 +337,494 @@ public class ClientTest {
     asyncCall.execute();
   }
 
+  @Test
+  public void sendLargeBody(TestContext ctx) throws Exception {
+    byte[] data = new byte[1024 * 1024];
+    for (int i = 0;i < data.length;i++) {
+      data[i] = (byte) i;
+    }
+    Async async = ctx.async();
+    startHttpServer(req -> {
+      req.bodyHandler(buff -> {
+        ctx.assertEquals("" + data.length, req.getHeader("Content-Length"));
+        ctx.assertTrue(Arrays.equals(data, buff.getBytes()));
+        req.response().end();
+        async.complete();
+      });
+    });
+    Call<ResponseBody> asyncCall = retrofit.create(SendBody.class).sendBody(RequestBody.create(MediaType.parse("application/octet-stream"), data));
+    asyncCall.execute();
+  }
+
+  @Test
+  public void sendFileBody(TestContext ctx) throws Exception {
+    byte[] data = new byte[1024 * 1024];
+    for (int i = 0;i < data.length;i++) {
+      data[i] = (byte) i;
+    }
+    File file = File.createTempFile("retrofit-vertx", ".bin");
+    file.deleteOnExit();
+    Files.write(file.toPath(), data);
+    startHttpServer(req -> {
+      req.bodyHandler(buff -> {
+        int offset = Integer.parseInt(req.getHeader("offset"));
+        ctx.assertEquals("" + buff.length(), req.getHeader("Content-Length"));
+        ctx.assertTrue(Arrays.equals(Arrays.copyOfRange(data, offset, offset + buff.length()), buff.getBytes()));
+        req.response().end("" + buff.length());
+      });
+    });
+    FileBody service = retrofit.create(FileBody.class);
+    MediaType octetStream = MediaType.parse("application/octet-stream");
+    ctx.assertEquals("" + data.length, service.send(0, FileRequestBody.create(octetStream, file)).execute().body().string());
+    ctx.assertEquals("500000", service.send(1000, FileRequestBody.create(octetStream, file, 1000, 500000)).execute().body().string());
+  }
+
+  public interface FileBody {
+    @PUT("/")
+    Call<ResponseBody> send(@Header("offset") int offset, @Body RequestBody body);
+  }
+
+  public interface JsonService {
+    @POST("/")
+    Call<JsonArray> send(@Body JsonObject body);
+    @POST("/")
+    Call<Map<String, Integer>> count(@Body List<String> words);
+  }
+
+  @Test
+  public void testJsonConverter(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+      req.bodyHandler(buff -> {
+        ctx.assertEquals("application/json; charset=UTF-8", req.getHeader("Content-Type"));
+        ctx.assertEquals("" + buff.length(), req.getHeader("Content-Length"));
+        Object json = buff.toJson();
+        if (json instanceof JsonObject) {
+          req.response().end(new JsonArray().add(((JsonObject) json).getString("name")).add(1).encode());
+        } else {
+          JsonObject counts = new JsonObject();
+          for (Object word : (JsonArray) json) {
+            counts.put((String) word, counts.getInteger((String) word, 0) + 1);
+          }
+          req.response().end(counts.encode());
+        }
+      });
+    });
+    JsonService service = new Retrofit.Builder()
+      .callFactory(retrofit.callFactory())
+      .baseUrl(API_URL)
+      .addConverterFactory(VertxJsonConverterFactory.create())
+      .build()
+      .create(JsonService.class);
+    ctx.assertEquals(new JsonArray().add("julien").add(1), service.send(new JsonObject().put("name", "julien")).execute().body());
+    Map<String, Integer> expected = new HashMap<>();
+    expected.put("a", 2);
+    expected.put("b", 1);
+    ctx.assertEquals(expected, service.count(Arrays.asList("a", "b", "a")).execute().body());
+  }
+
+  public interface JsonStreamService {
+    @Streaming
+    @GET("/")
+    ReadStream<JsonObject> objects();
+  }
+
+  @Test
+  public void testJsonConverterReadStream(TestContext ctx) throws Exception {
+    startHttpServer(req -> req.response().putHeader("Content-Type", "application/x-ndjson").end("{\"id\":1}\n{\"id\":2}\n"));
+    JsonStreamService service = new Retrofit.Builder()
+      .callFactory(retrofit.callFactory())
+      .baseUrl(API_URL)
+      .addCallAdapterFactory(VertxCallAdapterFactory.create())
+      .addConverterFactory(VertxJsonConverterFactory.create())
+      .build()
+      .create(JsonStreamService.class);
+    Async async = ctx.async();
+    List<JsonObject> objects = new ArrayList<>();
+    ReadStream<JsonObject> stream = service.objects();
+    stream.exceptionHandler(ctx::fail);
+    stream.endHandler(v -> {
+      ctx.assertEquals(Arrays.asList(new JsonObject().put("id", 1), new JsonObject().put("id", 2)), objects);
+      async.complete();
+    });
+    stream.handler(objects::add);
+  }
+
+  private static RequestBody unknownLengthBody(byte[] data) {
+    return new RequestBody() {
+      @Override
+      public MediaType contentType() {
+        return MediaType.parse("application/octet-stream");
+      }
+      @Override
+      public long contentLength() {
+        return -1;
+      }
+      @Override
+      public void writeTo(BufferedSink sink) throws IOException {
+        for (int i = 0;i < data.length;i += 1000) {
+          sink.write(data, i, Math.min(1000, data.length - i));
+          sink.flush();
+        }
+      }
+    };
+  }
+
+  @Test
+  public void sendChunkedBody(TestContext ctx) throws Exception {
+    byte[] data = new byte[100 * 1000];
+    Arrays.fill(data, (byte) 'a');
+    Async async = ctx.async();
+    startHttpServer(req -> {
+      ctx.assertEquals("chunked", req.getHeader("Transfer-Encoding"));
+      ctx.assertNull(req.getHeader("Content-Length"));
+      req.bodyHandler(buff -> {
+        ctx.assertTrue(Arrays.equals(data, buff.getBytes()));
+        req.response().end();
+        async.complete();
+      });
+    });
+    Call<ResponseBody> asyncCall = retrofit.create(SendBody.class).sendBody(unknownLengthBody(data));
+    asyncCall.execute();
+  }
+
+  @Test
+  public void sendChunkedBodyFromEventLoop(TestContext ctx) throws Exception {
+    byte[] data = new byte[4 * 1024 * 1024];
+    Arrays.fill(data, (byte) 'a');
+    startHttpServer(req -> {
+      req.bodyHandler(buff -> {
+        ctx.assertEquals(data.length, buff.length());
+        req.response().end();
+      });
+    });
+    Async async = ctx.async();
+    vertx.runOnContext(v -> {
+      Call<ResponseBody> asyncCall = retrofit.create(SendBody.class).sendBody(unknownLengthBody(data));
+      asyncCall.enqueue(new retrofit2.Callback<ResponseBody>() {
+        @Override
+        public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+          ctx.assertEquals(200, response.code());
+          async.complete();
+        }
+        @Override
+        public void onFailure(Call<ResponseBody> call, Throwable t) {
+          ctx.fail(t);
+        }
+      });
+    });
+  }
+
+  @Test
+  public void testCancel(TestContext ctx) throws Exception {
+    Async closed = ctx.async();
+    startHttpServer(req -> {
+      // Never respond
+      req.connection().closeHandler(v -> closed.complete());
+    });
+    Call<ResponseBody> call = retrofit.create(ReceiveHeaders.class).send();
+    Async failed = ctx.async();
+    call.enqueue(new retrofit2.Callback<ResponseBody>() {
+      @Override
+      public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+        ctx.fail();
+      }
+      @Override
+      public void onFailure(Call<ResponseBody> call, Throwable t) {
+        ctx.assertTrue(call.isCanceled());
+        ctx.assertEquals(IOException.class, t.getClass());
+        ctx.assertEquals("Canceled", t.getMessage());
+        failed.complete();
+      }
+    });
+    vertx.setTimer(100, id -> call.cancel());
+  }
+
+  @Test
+  public void testCancelBeforeExecute(TestContext ctx) throws Exception {
+    startHttpServer(req -> ctx.fail());
+    Call<ResponseBody> call = retrofit.create(ReceiveHeaders.class).send();
+    call.cancel();
+    try {
+      call.execute();
+      ctx.fail();
+    } catch (IOException ignore) {
+    }
+    ctx.assertTrue(call.isCanceled());
+  }
+
+  @Test
+  public void testCancelStreamingBody(TestContext ctx) throws Exception {
+    Async closed = ctx.async();
+    startHttpServer(req -> {
+      req.response().setChunked(true).write("first-chunk");
+      req.connection().closeHandler(v -> closed.complete());
+    });
+    Call<ResponseBody> call = retrofit.create(StreamingBody.class).body();
+    BufferedSource source = call.execute().body().source();
+    assertEquals("first-chunk", source.readUtf8(11));
+    call.cancel();
+    try {
+      source.readUtf8();
+      ctx.fail();
+    } catch (IOException e) {
+      ctx.assertEquals("Canceled", e.getMessage());
+    }
+  }
+
+  public interface WithOptions {
+    @GET("/")
+    Call<ResponseBody> get(@Tag CallOptions options);
+    @Streaming
+    @GET("/")
+    Call<ResponseBody> stream(@Tag CallOptions options);
+  }
+
+  @Test
+  public void testStreamingIdleTimeout(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+      req.response().setChunked(true).write("some-data");
+    });
+    Call<ResponseBody> call = retrofit.create(WithOptions.class).stream(new CallOptions().setIdleTimeout(200));
+    BufferedSource source = call.execute().body().source();
+    assertEquals("some-data", source.readUtf8(9));
+    try {
+      source.readUtf8();
+      ctx.fail();
+    } catch (InterruptedIOException e) {
+      ctx.assertEquals("timeout", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testIdleTimeout(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+      req.response().setChunked(true).write("some-data");
+    });
+    Call<ResponseBody> call = retrofit.create(WithOptions.class).get(new CallOptions().setIdleTimeout(200));
+    try {
+      call.execute();
+      ctx.fail();
+    } catch (SocketTimeoutException ignore) {
+    }
+  }
+
+  @Test
+  public void testResponseHeadersTimeout(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+    });
+    Call<ResponseBody> call = retrofit.create(WithOptions.class).get(new CallOptions().setResponseHeadersTimeout(200));
+    try {
+      call.execute();
+      ctx.fail();
+    } catch (SocketTimeoutException e) {
+      ctx.assertEquals("timeout waiting for response headers", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testCallTimeout(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+      HttpServerResponse resp = req.response().setChunked(true);
+      long id = vertx.setPeriodic(50, v -> resp.write("data"));
+      resp.closeHandler(v -> vertx.cancelTimer(id));
+    });
+    Call<ResponseBody> call = retrofit.create(WithOptions.class).get(new CallOptions().setCallTimeout(300));
+    long now = System.currentTimeMillis();
+    try {
+      call.execute();
+      ctx.fail();
+    } catch (InterruptedIOException e) {
+      ctx.assertEquals("timeout", e.getMessage());
+    }
+    ctx.assertTrue(System.currentTimeMillis() - now < 5000);
+  }
+
+  @Test
+  public void testCallTimeoutFromFactory(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+    });
+    retrofit = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setCallTimeout(200)))
+      .build();
+    Call<ResponseBody> call = retrofit.create(ReceiveHeaders.class).send();
+    try {
+      call.execute();
+      ctx.fail();
+    } catch (InterruptedIOException e) {
+      ctx.assertEquals("timeout", e.getMessage());
+    }
+  }
+
+  public interface StreamingBody {
+    @Streaming
+    @GET("/")
+    Call<ResponseBody> body();
+  }
+
+  @Test
+  public void testStreamingBody(TestContext ctx) throws Exception {
+    CompletableFuture<Void> firstChunkRead = new CompletableFuture<>();
+    startHttpServer(req -> {
+      HttpServerResponse resp = req.response().setChunked(true);
+      resp.write("first-chunk");
+      firstChunkRead.thenRun(() -> resp.end("last-chunk"));
+    });
+    Call<ResponseBody> call = retrofit.create(StreamingBody.class).body();
+    ResponseBody body = call.execute().body();
+    BufferedSource source = body.source();
+    assertEquals("first-chunk", source.readUtf8(11));
+    firstChunkRead.complete(null);
+    assertEquals("last-chunk", source.readUtf8());
+  }
+
+  @Test
+  public void testStreamingBodyBackPressure(TestContext ctx) throws Exception {
+    Buffer chunk = Buffer.buffer(new byte[1024]);
+    int numChunks = 1024;
+    startHttpServer(req -> {
+      HttpServerResponse resp = req.response().putHeader("Content-Length", "" + numChunks * chunk.length());
+      resp.setWriteQueueMaxSize(chunk.length());
+      Handler<Void> writer = new Handler<Void>() {
+        int count;
+        @Override
+        public void handle(Void v) {
+          while (count < numChunks && !resp.writeQueueFull()) {
+            resp.write(chunk);
+            count++;
+          }
+          if (count < numChunks) {
+            resp.drainHandler(this);
+          } else {
+            resp.end();
+          }
+        }
+      };
+      writer.handle(null);
+    });
+    Call<ResponseBody> call = retrofit.create(StreamingBody.class).body();
+    ResponseBody body = call.execute().body();
+    assertEquals(numChunks * chunk.length(), body.contentLength());
+    assertEquals(numChunks * chunk.length(), body.bytes().length);
+  }
+
+  public interface StreamService {
+    @Streaming
+    @GET("/")
+    ReadStream<Contributor> contributors();
+    @Streaming
+    @GET("/")
+    ReadStream<Buffer> events();
+  }
+
+  @Test
+  public void testReadStream(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+      HttpServerResponse resp = req.response().setChunked(true).putHeader("Content-Type", "application/x-ndjson");
+      resp.write("{\"login\":\"julien\",\"contributions\":1}\n{\"login\":\"paulo\",");
+      vertx.setTimer(10, id -> resp.end("\"contributions\":2}\r\n\n{\"login\":\"thomas\",\"contributions\":3}"));
+    });
+    StreamService service = retrofit.newBuilder()
+      .addCallAdapterFactory(VertxCallAdapterFactory.create())
+      .build()
+      .create(StreamService.class);
+    Async async = ctx.async();
+    vertx.runOnContext(v1 -> {
+      Context context = Vertx.currentContext();
+      AtomicInteger fetched = new AtomicInteger();
+      List<String> logins = new ArrayList<>();
+      ReadStream<Contributor> stream = service.contributors();
+      stream.pause();
+      stream.exceptionHandler(ctx::fail);
+      stream.endHandler(v2 -> {
+        ctx.assertEquals(Arrays.asList("julien", "paulo", "thomas"), logins);
+        async.complete();
+      });
+      stream.handler(contributor -> {
+        ctx.assertEquals(context, Vertx.currentContext());
+        logins.add(contributor.login);
+        ctx.assertEquals(fetched.get(), logins.size());
+        vertx.setTimer(20, id -> stream.fetch(fetched.incrementAndGet() - logins.size()));
+      });
+      stream.fetch(fetched.incrementAndGet());
+    });
+  }
+
+  @Test
+  public void testReadStreamEvents(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+      HttpServerResponse resp = req.response().setChunked(true).putHeader("Content-Type", "text/event-stream");
+      resp.write(": comment\ndata: first\n\nevent: update\ndata: sec");
+      vertx.setTimer(10, id -> resp.end("ond\r\ndata:line\r\n\r\nid: 3\n\ndata: incomplete"));
+    });
+    StreamService service = retrofit.newBuilder()
+      .addCallAdapterFactory(VertxCallAdapterFactory.create())
+      .build()
+      .create(StreamService.class);
+    Async async = ctx.async();
+    List<String> events = new ArrayList<>();
+    ReadStream<Buffer> stream = service.events();
+    stream.exceptionHandler(ctx::fail);
+    stream.endHandler(v -> {
+      ctx.assertEquals(Arrays.asList("first", "second\nline"), events);
+      async.complete();
+    });
+    stream.handler(event -> events.add(event.toString()));
+  }
+
+  @Test
+  public void testReadStreamMaxRecordSize(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+      HttpServerResponse resp = req.response().setChunked(true).putHeader("Content-Type", "application/x-ndjson");
+      resp.write("small\n");
+      vertx.setTimer(10, id -> resp.write("0123456789abcdef"));
+    });
+    StreamService service = retrofit.newBuilder()
+      .addCallAdapterFactory(VertxCallAdapterFactory.create(8))
+      .build()
+      .create(StreamService.class);
+    Async async = ctx.async();
+    List<String> records = new ArrayList<>();
+    ReadStream<Buffer> stream = service.events();
+    stream.endHandler(v -> ctx.fail());
+    stream.exceptionHandler(err -> {
+      ctx.assertEquals(Collections.singletonList("small"), records);
+      ctx.assertEquals("Record exceeds the max record size of 8 bytes", err.getMessage());
+      async.complete();
+    });
+    stream.handler(record -> records.add(record.toString()));
+  }
+
+  @Test
+  public void testReadStreamMaxRecordSizeFetch(TestContext ctx) throws Exception {
+    StringBuilder chunk = new StringBuilder();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0;i < 100;i++) {
+      chunk.append("r").append(i).append('\n');
+      expected.add("r" + i);
+    }
+    startHttpServer(req -> req.response().putHeader("Content-Type", "application/x-ndjson").end(chunk.toString()));
+    StreamService service = retrofit.newBuilder()
+      .addCallAdapterFactory(VertxCallAdapterFactory.create(8))
+      .build()
+      .create(StreamService.class);
+    Async async = ctx.async();
+    vertx.runOnContext(v1 -> {
+      List<String> records = new ArrayList<>();
+      ReadStream<Buffer> stream = service.events();
+      stream.pause();
+      stream.exceptionHandler(ctx::fail);
+      stream.endHandler(v2 -> {
+        ctx.assertEquals(expected, records);
+        async.complete();
+      });
+      stream.handler(record -> {
+        records.add(record.toString());
+        vertx.runOnContext(v -> stream.fetch(1));
+      });
+      stream.fetch(1);
+    });
+  }
+
   interface RxJava {
     @GET("/")
     Single<ResponseBody> body();
@@ -250,6 +848,1175 @@ public class ClientTest {
     }, ctx::fail);
   }
 
+  public interface FutureService {
+    @GET("/repos/{owner}/{repo}/contributors")
+    io.vertx.core.Future<List<Contributor>> contributors(@Path("owner") String owner, @Path("repo") String repo);
+    @GET("/repos/{owner}/{repo}/contributors")
+    io.vertx.core.Future<Response<List<Contributor>>> contributorsResponse(@Path("owner") String owner, @Path("repo") String repo);
+  }
+
+  @Test
+  public void testFuture(TestContext ctx) throws Exception {
+    startHttpServer();
+    FutureService service = retrofit.newBuilder()
+      .addCallAdapterFactory(VertxCallAdapterFactory.create())
+      .build()
+      .create(FutureService.class);
+    Async async = ctx.async();
+    vertx.runOnContext(v -> {
+      Context context = Vertx.currentContext();
+      service.contributors("square", "retrofit").setHandler(ctx.asyncAssertSuccess(contributors -> {
+        ctx.assertEquals(context, Vertx.currentContext());
+        ctx.assertEquals(30, contributors.size());
+        async.complete();
+      }));
+    });
+  }
+
+  @Test
+  public void testFutureResponse(TestContext ctx) throws Exception {
+    startHttpServer();
+    FutureService service = retrofit.newBuilder()
+      .addCallAdapterFactory(VertxCallAdapterFactory.create())
+      .build()
+      .create(FutureService.class);
+    Async async = ctx.async();
+    service.contributorsResponse("square", "retrofit").setHandler(ctx.asyncAssertSuccess(response -> {
+      ctx.assertEquals(200, response.code());
+      ctx.assertEquals(30, response.body().size());
+      async.complete();
+    }));
+  }
+
+  @Test
+  public void testFutureHttpError(TestContext ctx) throws Exception {
+    startHttpServer();
+    FutureService service = retrofit.newBuilder()
+      .addCallAdapterFactory(VertxCallAdapterFactory.create())
+      .build()
+      .create(FutureService.class);
+    Async async = ctx.async();
+    service.contributors("square", "unknown").setHandler(ctx.asyncAssertFailure(err -> {
+      ctx.assertTrue(err instanceof HttpException);
+      ctx.assertEquals(404, ((HttpException) err).code());
+      async.complete();
+    }));
+  }
+
+  public interface Cached {
+    @GET("/cached")
+    Call<ResponseBody> get();
+  }
+
+  private Cached cachedService(ResponseCache cache) {
+    return retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setResponseCache(cache)))
+      .build()
+      .create(Cached.class);
+  }
+
+  @Test
+  public void testCacheHit(TestContext ctx) throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    startHttpServer(req -> {
+      requests.incrementAndGet();
+      req.response().putHeader("Cache-Control", "max-age=60").end("the-body");
+    });
+    ResponseCache cache = new ResponseCache();
+    Cached service = cachedService(cache);
+    ctx.assertEquals("the-body", service.get().execute().body().string());
+    ctx.assertEquals("the-body", service.get().execute().body().string());
+    ctx.assertEquals(1, requests.get());
+    ctx.assertEquals(1L, cache.getMissCount());
+    ctx.assertEquals(1L, cache.getHitCount());
+  }
+
+  @Test
+  public void testCacheRevalidation(TestContext ctx) throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    startHttpServer(req -> {
+      requests.incrementAndGet();
+      HttpServerResponse resp = req.response().putHeader("Cache-Control", "no-cache").putHeader("ETag", "\"v1\"");
+      if ("\"v1\"".equals(req.getHeader("If-None-Match"))) {
+        resp.setStatusCode(304).end();
+      } else {
+        resp.end("the-body");
+      }
+    });
+    ResponseCache cache = new ResponseCache();
+    Cached service = cachedService(cache);
+    ctx.assertEquals("the-body", service.get().execute().body().string());
+    Response<ResponseBody> response = service.get().execute();
+    ctx.assertEquals(200, response.code());
+    ctx.assertEquals("the-body", response.body().string());
+    ctx.assertEquals(2, requests.get());
+    ctx.assertEquals(0L, cache.getHitCount());
+    ctx.assertEquals(1L, cache.getRevalidationCount());
+  }
+
+  @Test
+  public void testCacheStaleWhileRevalidate(TestContext ctx) throws Exception {
+    Async revalidated = ctx.async();
+    startHttpServer(req -> {
+      HttpServerResponse resp = req.response().putHeader("Cache-Control", "max-age=0, stale-while-revalidate=60").putHeader("ETag", "\"v1\"");
+      if (req.getHeader("If-None-Match") != null) {
+        vertx.setTimer(200, id -> {
+          resp.setStatusCode(304).end();
+          revalidated.complete();
+        });
+      } else {
+        resp.end("the-body");
+      }
+    });
+    ResponseCache cache = new ResponseCache();
+    Cached service = cachedService(cache);
+    ctx.assertEquals("the-body", service.get().execute().body().string());
+    // The stale hits share a single revalidation
+    ctx.assertEquals("the-body", service.get().execute().body().string());
+    ctx.assertEquals("the-body", service.get().execute().body().string());
+    ctx.assertEquals(2L, cache.getHitCount());
+    revalidated.awaitSuccess(10000);
+    ctx.assertEquals(1L, cache.getRevalidationCount());
+  }
+
+  @Test
+  public void testCacheDisk(TestContext ctx) throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    startHttpServer(req -> {
+      requests.incrementAndGet();
+      req.response().putHeader("Cache-Control", "max-age=60").end("the-body");
+    });
+    File dir = Files.createTempDirectory("cache").toFile();
+    ResponseCacheOptions options = new ResponseCacheOptions().setDiskDirectory(dir.getAbsolutePath());
+    ctx.assertEquals("the-body", cachedService(new ResponseCache(options)).get().execute().body().string());
+    long now = System.currentTimeMillis();
+    while (dir.list((d, name) -> name.endsWith(".entry")).length == 0) {
+      ctx.assertTrue(System.currentTimeMillis() - now < 10000);
+      Thread.sleep(10);
+    }
+    ResponseCache cache = new ResponseCache(options);
+    Cached service = cachedService(cache);
+    ctx.assertEquals("the-body", service.get().execute().body().string());
+    ctx.assertEquals("the-body", service.get().execute().body().string());
+    ctx.assertEquals(1, requests.get());
+    ctx.assertEquals(2L, cache.getHitCount());
+  }
+
+  private Cached coalescingService() {
+    return retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setCoalescing(true)))
+      .build()
+      .create(Cached.class);
+  }
+
+  @Test
+  public void testCoalescing(TestContext ctx) throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    startHttpServer(req -> {
+      requests.incrementAndGet();
+      vertx.setTimer(200, id -> req.response().end("the-body"));
+    });
+    Cached service = coalescingService();
+    int num = 5;
+    Async async = ctx.async(num);
+    for (int i = 0;i < num;i++) {
+      service.get().enqueue(new retrofit2.Callback<ResponseBody>() {
+        @Override
+        public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+          try {
+            ctx.assertEquals("the-body", response.body().string());
+          } catch (IOException e) {
+            ctx.fail(e);
+          }
+          ctx.assertEquals(1, requests.get());
+          async.countDown();
+        }
+        @Override
+        public void onFailure(Call<ResponseBody> call, Throwable t) {
+          ctx.fail(t);
+        }
+      });
+    }
+  }
+
+  @Test
+  public void testCoalescingPhases(TestContext ctx) throws Exception {
+    startHttpServer(req -> vertx.setTimer(200, id -> req.response().end("the-body")));
+    DefaultCallMetrics metrics = new DefaultCallMetrics();
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+    CallListener listener = new CallListener() {
+      public void requestHeadersEnd(okhttp3.Call call, long nanoTime) { events.add("requestHeadersEnd"); }
+      public void responseHeadersEnd(okhttp3.Call call, long nanoTime, int statusCode) { events.add("responseHeadersEnd"); }
+    };
+    Cached service = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+        .setCoalescing(true)
+        .setMetrics(metrics)
+        .setCallListener(listener)))
+      .build()
+      .create(Cached.class);
+    int num = 3;
+    Async async = ctx.async(num);
+    vertx.runOnContext(v -> {
+      for (int i = 0;i < num;i++) {
+        service.get().enqueue(new retrofit2.Callback<ResponseBody>() {
+          @Override
+          public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+            async.countDown();
+          }
+          @Override
+          public void onFailure(Call<ResponseBody> call, Throwable t) {
+            ctx.fail(t);
+          }
+        });
+      }
+    });
+    async.awaitSuccess(10000);
+    // Each coalesced call reports the phases of the shared request
+    ctx.assertEquals(num * 2, events.size());
+    DefaultCallMetrics.Endpoint endpoint = metrics.endpoint(Cached.class.getMethod("get"));
+    ctx.assertEquals((long) num, endpoint.ttfb().getCount());
+    ctx.assertTrue(endpoint.ttfb().getValueAtPercentile(0) >= TimeUnit.MILLISECONDS.toNanos(150));
+  }
+
+  @Test
+  public void testCoalescingCancel(TestContext ctx) throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    CompletableFuture<HttpServerRequest> received = new CompletableFuture<>();
+    startHttpServer(req -> {
+      requests.incrementAndGet();
+      received.complete(req);
+    });
+    Cached service = coalescingService();
+    Call<ResponseBody> canceled = service.get();
+    Async failed = ctx.async();
+    canceled.enqueue(new retrofit2.Callback<ResponseBody>() {
+      @Override
+      public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+        ctx.fail();
+      }
+      @Override
+      public void onFailure(Call<ResponseBody> call, Throwable t) {
+        failed.complete();
+      }
+    });
+    Call<ResponseBody> call = service.get();
+    CompletableFuture<String> result = new CompletableFuture<>();
+    call.enqueue(new retrofit2.Callback<ResponseBody>() {
+      @Override
+      public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+        try {
+          result.complete(response.body().string());
+        } catch (IOException e) {
+          result.completeExceptionally(e);
+        }
+      }
+      @Override
+      public void onFailure(Call<ResponseBody> call, Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    HttpServerRequest req = received.get(10, TimeUnit.SECONDS);
+    canceled.cancel();
+    failed.awaitSuccess(10000);
+    req.response().end("the-body");
+    ctx.assertEquals("the-body", result.get(10, TimeUnit.SECONDS));
+    ctx.assertEquals(1, requests.get());
+  }
+
+  @Test
+  public void testClientWrapper(TestContext ctx) throws Exception {
+    startHttpServer(req -> req.response().end("the-body"));
+    HttpClient wrapper = (HttpClient) java.lang.reflect.Proxy.newProxyInstance(HttpClient.class.getClassLoader(), new Class[] { HttpClient.class }, (proxy, method, args) -> {
+      try {
+        return method.invoke(client, args);
+      } catch (java.lang.reflect.InvocationTargetException e) {
+        throw e.getCause();
+      }
+    });
+    // The Vert.x instance is the one of the context creating the factory
+    CompletableFuture<VertxCallFactory> factory = new CompletableFuture<>();
+    vertx.runOnContext(v -> factory.complete(new VertxCallFactory(wrapper)));
+    Cached service = retrofit.newBuilder().callFactory(factory.get(10, TimeUnit.SECONDS)).build().create(Cached.class);
+    ctx.assertEquals("the-body", service.get().execute().body().string());
+  }
+
+  @Test
+  public void testClientPerEventLoop(TestContext ctx) throws Exception {
+    startHttpServer();
+    VertxCallFactory factory = new VertxCallFactory(vertx, new HttpClientOptions());
+    GitHub service = retrofit.newBuilder().callFactory(factory).build().create(GitHub.class);
+    int num = 4;
+    Async async = ctx.async(num);
+    for (int i = 0;i < num;i++) {
+      Context context = vertx.getOrCreateContext();
+      context.runOnContext(v -> {
+        Thread thread = Thread.currentThread();
+        service.contributors("square", "retrofit").enqueue(new retrofit2.Callback<List<Contributor>>() {
+          @Override
+          public void onResponse(Call<List<Contributor>> call, Response<List<Contributor>> response) {
+            ctx.assertEquals(context, Vertx.currentContext());
+            ctx.assertEquals(thread, Thread.currentThread());
+            ctx.assertEquals(30, response.body().size());
+            async.countDown();
+          }
+          @Override
+          public void onFailure(Call<List<Contributor>> call, Throwable t) {
+            ctx.fail(t);
+          }
+        });
+      });
+    }
+    async.awaitSuccess(10000);
+    factory.close();
+  }
+
+  @Test
+  public void testMetrics(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+      switch (req.path()) {
+        case "/repos/square/retrofit/contributors":
+          req.response().sendFile("result.json");
+          break;
+        case "/":
+          req.bodyHandler(body -> req.response().end("ok"));
+          break;
+        default:
+          req.response().setStatusCode(404).end();
+          break;
+      }
+    });
+    DefaultCallMetrics metrics = new DefaultCallMetrics();
+    Retrofit metered = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setMetrics(metrics)))
+      .build();
+    GitHub service = metered.create(GitHub.class);
+    ctx.assertEquals(30, service.contributors("square", "retrofit").execute().body().size());
+    ctx.assertEquals(404, service.contributors("square", "unknown").execute().code());
+    metered.create(PostBody.class).send("fieldvalue").execute();
+    DefaultCallMetrics.Endpoint endpoint = metrics.endpoint(GitHub.class.getMethod("contributors", String.class, String.class));
+    ctx.assertEquals(2L, endpoint.total().getCount());
+    ctx.assertEquals(2L, endpoint.ttfb().getCount());
+    ctx.assertEquals(1L, endpoint.responses(2));
+    ctx.assertEquals(1L, endpoint.responses(4));
+    ctx.assertEquals(0L, endpoint.inFlight());
+    ctx.assertTrue(endpoint.bytesReceived() > 0);
+    ctx.assertTrue(endpoint.total().getValueAtPercentile(100) >= endpoint.ttfb().getValueAtPercentile(0));
+    DefaultCallMetrics.Endpoint post = metrics.endpoint(PostBody.class.getMethod("send", String.class));
+    ctx.assertEquals((long) "Field1=fieldvalue".length(), post.bytesSent());
+    ctx.assertEquals(2L, post.bytesReceived());
+    ctx.assertEquals(2, metrics.endpoints().size());
+  }
+
+  @Test
+  public void testCallListener(TestContext ctx) throws Exception {
+    startHttpServer(req -> req.bodyHandler(body -> req.response().end("ok")));
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+    List<Long> timestamps = Collections.synchronizedList(new ArrayList<>());
+    CallListener listener = new CallListener() {
+      private void event(String name, long nanoTime) {
+        events.add(name);
+        timestamps.add(nanoTime);
+      }
+      public void callStart(okhttp3.Call call, long nanoTime) { event("callStart", nanoTime); }
+      public void connectEnd(okhttp3.Call call, long nanoTime) { event("connectEnd", nanoTime); }
+      public void requestHeadersEnd(okhttp3.Call call, long nanoTime) { event("requestHeadersEnd", nanoTime); }
+      public void requestBodyEnd(okhttp3.Call call, long nanoTime, long byteCount) { event("requestBodyEnd", nanoTime); }
+      public void responseHeadersEnd(okhttp3.Call call, long nanoTime, int statusCode) { event("responseHeadersEnd", nanoTime); }
+      public void responseBodyEnd(okhttp3.Call call, long nanoTime, long byteCount) { event("responseBodyEnd", nanoTime); }
+      public void callEnd(okhttp3.Call call, long nanoTime) { event("callEnd", nanoTime); }
+      public void callFailed(okhttp3.Call call, long nanoTime, IOException failure) { event("callFailed", nanoTime); }
+    };
+    PostBody service = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setCallListener(listener)))
+      .build()
+      .create(PostBody.class);
+    service.send("fieldvalue").execute();
+    ctx.assertEquals(Arrays.asList("callStart", "connectEnd", "requestHeadersEnd", "requestBodyEnd", "responseHeadersEnd", "responseBodyEnd", "callEnd"), events);
+    for (int i = 1;i < timestamps.size();i++) {
+      ctx.assertTrue(timestamps.get(i - 1) <= timestamps.get(i));
+    }
+    events.clear();
+    service.send("fieldvalue").execute();
+    ctx.assertEquals(Arrays.asList("callStart", "requestHeadersEnd", "requestBodyEnd", "responseHeadersEnd", "responseBodyEnd", "callEnd"), events);
+  }
+
+  private Cached retryService(RetryPolicy policy) {
+    return retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setRetryPolicy(policy)))
+      .build()
+      .create(Cached.class);
+  }
+
+  @Test
+  public void testRetry(TestContext ctx) throws Exception {
+    Cached exhausted = retryService(new RetryPolicy().setBudgetMaxTokens(0).setBudgetRatio(0));
+    try {
+      exhausted.get().execute();
+      ctx.fail();
+    } catch (IOException expected) {
+    }
+    Cached service = retryService(new RetryPolicy().setRetryBackoff(1000));
+    CompletableFuture<String> result = new CompletableFuture<>();
+    service.get().enqueue(new retrofit2.Callback<ResponseBody>() {
+      @Override
+      public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+        try {
+          result.complete(response.body().string());
+        } catch (IOException e) {
+          result.completeExceptionally(e);
+        }
+      }
+      @Override
+      public void onFailure(Call<ResponseBody> call, Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    // Let the first attempt fail to connect
+    Thread.sleep(200);
+    startHttpServer(req -> req.response().end("the-body"));
+    ctx.assertEquals("the-body", result.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testRetryPhases(TestContext ctx) throws Exception {
+    DefaultCallMetrics metrics = new DefaultCallMetrics();
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+    CallListener listener = new CallListener() {
+      public void callStart(okhttp3.Call call, long nanoTime) { events.add("callStart"); }
+      public void connectEnd(okhttp3.Call call, long nanoTime) { events.add("connectEnd"); }
+      public void requestHeadersEnd(okhttp3.Call call, long nanoTime) { events.add("requestHeadersEnd"); }
+      public void responseHeadersEnd(okhttp3.Call call, long nanoTime, int statusCode) { events.add("responseHeadersEnd"); }
+      public void responseBodyEnd(okhttp3.Call call, long nanoTime, long byteCount) { events.add("responseBodyEnd"); }
+      public void callEnd(okhttp3.Call call, long nanoTime) { events.add("callEnd"); }
+    };
+    Cached service = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+        .setRetryPolicy(new RetryPolicy().setRetryBackoff(500))
+        .setMetrics(metrics)
+        .setCallListener(listener)))
+      .build()
+      .create(Cached.class);
+    CompletableFuture<String> result = new CompletableFuture<>();
+    service.get().enqueue(new retrofit2.Callback<ResponseBody>() {
+      @Override
+      public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+        try {
+          result.complete(response.body().string());
+        } catch (IOException e) {
+          result.completeExceptionally(e);
+        }
+      }
+      @Override
+      public void onFailure(Call<ResponseBody> call, Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    // Let the first attempt fail to connect
+    Thread.sleep(100);
+    startHttpServer(req -> req.response().end("the-body"));
+    ctx.assertEquals("the-body", result.get(10, TimeUnit.SECONDS));
+    // The phases are the phases of the attempt that succeeded
+    ctx.assertEquals(Arrays.asList("callStart", "connectEnd", "requestHeadersEnd", "responseHeadersEnd", "responseBodyEnd", "callEnd"), events);
+    DefaultCallMetrics.Endpoint endpoint = metrics.endpoint(Cached.class.getMethod("get"));
+    ctx.assertEquals(1L, endpoint.queue().getCount());
+    long queue = endpoint.queue().getValueAtPercentile(100);
+    long ttfb = endpoint.ttfb().getValueAtPercentile(100);
+    ctx.assertTrue(queue >= TimeUnit.MILLISECONDS.toNanos(400), "Queue " + queue);
+    ctx.assertTrue(ttfb >= queue);
+    ctx.assertTrue(endpoint.total().getValueAtPercentile(100) >= ttfb);
+  }
+
+  @Test
+  public void testHedging(TestContext ctx) throws Exception {
+    int warmUp = 20;
+    AtomicInteger requests = new AtomicInteger();
+    Async canceled = ctx.async();
+    startHttpServer(req -> {
+      int num = requests.incrementAndGet();
+      if (num <= warmUp) {
+        req.response().end("the-body");
+      } else if (num == warmUp + 1) {
+        req.response().closeHandler(v -> canceled.complete());
+      } else {
+        req.response().end("the-hedged-body");
+      }
+    });
+    Cached service = retryService(new RetryPolicy().setHedging(true).setHedgingMinDelay(50));
+    for (int i = 0;i < warmUp;i++) {
+      ctx.assertEquals("the-body", service.get().execute().body().string());
+    }
+    ctx.assertEquals("the-hedged-body", service.get().execute().body().string());
+    ctx.assertEquals(warmUp + 2, requests.get());
+  }
+
+  @Test
+  public void testConcurrencyLimit(TestContext ctx) throws Exception {
+    List<HttpServerRequest> requests = Collections.synchronizedList(new ArrayList<>());
+    startHttpServer(requests::add);
+    VertxCallFactory factory = new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+      .setConcurrencyLimit(new ConcurrencyLimitOptions().setInitialLimit(1).setMaxLimit(1).setMaxQueueSize(1).setQueueTimeout(0)));
+    Cached service = retrofit.newBuilder().callFactory(factory).build().create(Cached.class);
+    CompletableFuture<String> first = body(service.get());
+    CompletableFuture<String> second = body(service.get());
+    waitUntil(ctx, () -> {
+      ConcurrencyLimiter limiter = factory.concurrencyLimiters().get("localhost:8080");
+      return limiter != null && limiter.getInFlight() == 1 && limiter.getQueueSize() == 1;
+    });
+    try {
+      service.get().execute();
+      ctx.fail();
+    } catch (ConcurrencyLimitException expected) {
+    }
+    waitUntil(ctx, () -> requests.size() == 1);
+    requests.get(0).response().end("first");
+    waitUntil(ctx, () -> requests.size() == 2);
+    requests.get(1).response().end("second");
+    ctx.assertEquals(new HashSet<>(Arrays.asList("first", "second")), new HashSet<>(Arrays.asList(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS))));
+    ConcurrencyLimiter limiter = factory.concurrencyLimiters().get("localhost:8080");
+    ctx.assertEquals(0, limiter.getInFlight());
+    ctx.assertEquals(1L, limiter.getRejectedCount());
+  }
+
+  @Test
+  public void testConcurrencyLimitCancel(TestContext ctx) throws Exception {
+    List<HttpServerRequest> requests = Collections.synchronizedList(new ArrayList<>());
+    startHttpServer(requests::add);
+    VertxCallFactory factory = new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+      .setConcurrencyLimit(new ConcurrencyLimitOptions().setInitialLimit(1).setMaxLimit(1).setMaxQueueSize(1).setQueueTimeout(0)));
+    Cached service = retrofit.newBuilder().callFactory(factory).build().create(Cached.class);
+    CompletableFuture<String> first = body(service.get());
+    waitUntil(ctx, () -> requests.size() == 1);
+    Call<ResponseBody> call = service.get();
+    CompletableFuture<String> second = body(call);
+    waitUntil(ctx, () -> factory.concurrencyLimiters().get("localhost:8080").getQueueSize() == 1);
+    call.cancel();
+    try {
+      second.get(10, TimeUnit.SECONDS);
+      ctx.fail();
+    } catch (ExecutionException expected) {
+    }
+    // The cancelled call left the queue, another call can wait
+    ConcurrencyLimiter limiter = factory.concurrencyLimiters().get("localhost:8080");
+    ctx.assertEquals(0, limiter.getQueueSize());
+    CompletableFuture<String> third = body(service.get());
+    waitUntil(ctx, () -> limiter.getQueueSize() == 1);
+    requests.get(0).response().end("first");
+    waitUntil(ctx, () -> requests.size() == 2);
+    requests.get(1).response().end("third");
+    ctx.assertEquals("first", first.get(10, TimeUnit.SECONDS));
+    ctx.assertEquals("third", third.get(10, TimeUnit.SECONDS));
+    ctx.assertEquals(0L, limiter.getRejectedCount());
+  }
+
+  @Test
+  public void testConcurrencyLimitAdapts(TestContext ctx) throws Exception {
+    startHttpServer(req -> req.response().setStatusCode(503).end());
+    VertxCallFactory factory = new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+      .setConcurrencyLimit(new ConcurrencyLimitOptions().setAlgorithm(LimitAlgorithm.AIMD).setInitialLimit(10)));
+    Cached service = retrofit.newBuilder().callFactory(factory).build().create(Cached.class);
+    for (int i = 0;i < 5;i++) {
+      ctx.assertEquals(503, service.get().execute().code());
+    }
+    ctx.assertEquals(5, factory.concurrencyLimiters().get("localhost:8080").getLimit());
+  }
+
+  @Test
+  public void testHttp2(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+      if (req.version() == HttpVersion.HTTP_2) {
+        req.response().end(Short.toString(req.streamPriority().getWeight()));
+      } else {
+        req.response().end();
+      }
+    });
+    HttpClient h2Client = vertx.createHttpClient(new HttpClientOptions()
+      .setProtocolVersion(HttpVersion.HTTP_2)
+      .setHttp2ClearTextUpgrade(false));
+    WithOptions service = retrofit.newBuilder().callFactory(new VertxCallFactory(vertx, h2Client)).build().create(WithOptions.class);
+    Response<ResponseBody> response = service.get(new CallOptions().setStreamPriority(new StreamPriority().setWeight((short) 200))).execute();
+    ctx.assertEquals(Protocol.H2_PRIOR_KNOWLEDGE, response.raw().protocol());
+    ctx.assertEquals("200", response.body().string());
+    response = retrofit.create(WithOptions.class).get(new CallOptions()).execute();
+    ctx.assertEquals(Protocol.HTTP_1_1, response.raw().protocol());
+  }
+
+  @Test
+  public void testInvalidContentLength(TestContext ctx) throws Exception {
+    startHttpServer(req -> req.response().putHeader("Content-Length", "abc").end());
+    HttpClient h2Client = vertx.createHttpClient(new HttpClientOptions()
+      .setProtocolVersion(HttpVersion.HTTP_2)
+      .setHttp2ClearTextUpgrade(false));
+    Cached service = retrofit.newBuilder().callFactory(new VertxCallFactory(vertx, h2Client)).build().create(Cached.class);
+    try {
+      service.get().execute();
+      ctx.fail();
+    } catch (ProtocolException e) {
+      ctx.assertEquals("Invalid Content-Length abc", e.getMessage());
+    }
+  }
+
+  private static byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(data);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testCompression(TestContext ctx) throws Exception {
+    String content = String.join("", Collections.nCopies(1000, "the-body"));
+    byte[] compressed = gzip(content.getBytes());
+    startHttpServer(req -> {
+      ctx.assertEquals("gzip, deflate", req.getHeader("Accept-Encoding"));
+      req.response().putHeader("Content-Encoding", "gzip").end(Buffer.buffer(compressed));
+    });
+    DefaultCallMetrics metrics = new DefaultCallMetrics();
+    Retrofit compressing = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setCompression(true).setMetrics(metrics)))
+      .build();
+    Response<ResponseBody> response = compressing.create(Cached.class).get().execute();
+    ctx.assertNull(response.headers().get("Content-Encoding"));
+    ctx.assertNull(response.headers().get("Content-Length"));
+    ctx.assertEquals((long) content.length(), response.body().contentLength());
+    ctx.assertEquals(content, response.body().string());
+    ctx.assertEquals(content, compressing.create(StreamingBody.class).body().execute().body().string());
+    Histogram ratio = metrics.endpoint(Cached.class.getMethod("get")).responseCompression();
+    ctx.assertEquals(1L, ratio.getCount());
+    ctx.assertEquals((long) compressed.length * 100 / content.length(), ratio.getMax());
+  }
+
+  @Test
+  public void testCompressionMaxBodySize(TestContext ctx) throws Exception {
+    byte[] compressed = gzip(new byte[1024 * 1024]);
+    startHttpServer(req -> req.response().putHeader("Content-Encoding", "gzip").end(Buffer.buffer(compressed)));
+    Cached service = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setCompression(true).setMaxBodySize(64 * 1024)))
+      .build().create(Cached.class);
+    ctx.assertTrue(compressed.length < 64 * 1024);
+    try {
+      service.get().execute();
+      ctx.fail();
+    } catch (IOException e) {
+      ctx.assertEquals("Response body exceeds the max body size of 65536 bytes", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testRequestCompression(TestContext ctx) throws Exception {
+    String content = String.join("", Collections.nCopies(1000, "the-body"));
+    startHttpServer(req -> {
+      ctx.assertEquals("gzip", req.getHeader("Content-Encoding"));
+      req.bodyHandler(body -> {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body.getBytes()))) {
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          byte[] buf = new byte[1024];
+          int len;
+          while ((len = in.read(buf)) != -1) {
+            out.write(buf, 0, len);
+          }
+          req.response().end(Buffer.buffer(out.toByteArray()));
+        } catch (IOException e) {
+          req.response().setStatusCode(500).end();
+        }
+      });
+    });
+    DefaultCallMetrics metrics = new DefaultCallMetrics();
+    PostBody service = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setRequestCompressionThreshold(1024).setMetrics(metrics)))
+      .build()
+      .create(PostBody.class);
+    ctx.assertEquals("Field1=" + content, service.send(content).execute().body().string());
+    DefaultCallMetrics.Endpoint endpoint = metrics.endpoint(PostBody.class.getMethod("send", String.class));
+    ctx.assertEquals(1L, endpoint.requestCompression().getCount());
+    ctx.assertTrue(endpoint.requestCompression().getMax() < 10);
+  }
+
+  @Test
+  public void testLargeBody(TestContext ctx) throws Exception {
+    String content = String.join("", Collections.nCopies(100000, "the-body"));
+    startHttpServer(req -> {
+      if (req.path().equals("/chunked")) {
+        HttpServerResponse resp = req.response().setChunked(true);
+        for (int i = 0;i < content.length();i += 10000) {
+          resp.write(content.substring(i, i + 10000));
+        }
+        resp.end();
+      } else {
+        req.response().end(content);
+      }
+    });
+    Retrofit spilling = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setMaxInMemoryBodySize(65536)))
+      .build();
+    ResponseBody body = spilling.create(Cached.class).get().execute().body();
+    ctx.assertEquals((long) content.length(), body.contentLength());
+    ctx.assertEquals(content, body.string());
+    ctx.assertEquals(content, spilling.create(Chunked.class).get().execute().body().string());
+  }
+
+  @Test
+  public void testLargeBodyFromWorkerContext(TestContext ctx) throws Exception {
+    byte[] content = new byte[8 * 1024 * 1024];
+    startHttpServer(req -> {
+      // Let the request write queue fill
+      req.pause();
+      vertx.setTimer(200, id -> req.resume());
+      req.bodyHandler(body -> req.response().end("" + body.length()));
+    });
+    SendBody service = retrofit.create(SendBody.class);
+    Async async = ctx.async();
+    vertx.deployVerticle(new AbstractVerticle() {
+      @Override
+      public void start() {
+        Thread contextThread = Thread.currentThread();
+        RequestBody body = new RequestBody() {
+          @Override
+          public MediaType contentType() {
+            return MediaType.parse("application/octet-stream");
+          }
+          @Override
+          public long contentLength() {
+            return content.length;
+          }
+          @Override
+          public void writeTo(BufferedSink sink) throws IOException {
+            // The worker context is not blocked, it runs the request handlers
+            ctx.assertNotEquals(contextThread, Thread.currentThread());
+            try {
+              // Write once the connection is established
+              Thread.sleep(100);
+            } catch (InterruptedException e) {
+              throw new InterruptedIOException();
+            }
+            sink.write(content);
+          }
+        };
+        service.sendBody(body).enqueue(new retrofit2.Callback<ResponseBody>() {
+          @Override
+          public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+            ctx.assertTrue(Context.isOnWorkerThread());
+            try {
+              ctx.assertEquals("" + content.length, response.body().string());
+            } catch (IOException e) {
+              ctx.fail(e);
+            }
+            async.complete();
+          }
+          @Override
+          public void onFailure(Call<ResponseBody> call, Throwable t) {
+            ctx.fail(t);
+          }
+        });
+      }
+    }, new DeploymentOptions().setWorker(true));
+  }
+
+  public interface Chunked {
+    @GET("/chunked")
+    Call<ResponseBody> get();
+  }
+
+  @Test
+  public void testMaxBodySize(TestContext ctx) throws Exception {
+    String content = String.join("", Collections.nCopies(1000, "the-body"));
+    startHttpServer(req -> {
+      if (req.path().equals("/chunked")) {
+        req.response().setChunked(true).write(content).end(content);
+      } else {
+        req.response().end(content);
+      }
+    });
+    Retrofit capped = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setMaxBodySize(4096)))
+      .build();
+    try {
+      capped.create(Cached.class).get().execute();
+      ctx.fail();
+    } catch (IOException e) {
+      ctx.assertEquals("Response body exceeds the max body size of 4096 bytes", e.getMessage());
+    }
+    try {
+      capped.create(Chunked.class).get().execute();
+      ctx.fail();
+    } catch (IOException e) {
+      ctx.assertEquals("Response body exceeds the max body size of 4096 bytes", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testResponseBodyFile(TestContext ctx) throws Exception {
+    String content = String.join("", Collections.nCopies(100000, "the-body"));
+    startHttpServer(req -> req.response().end(content));
+    File file = File.createTempFile("retrofit-vertx", ".txt");
+    file.deleteOnExit();
+    AsyncFile asyncFile = vertx.fileSystem().openBlocking(file.getAbsolutePath(), new OpenOptions().setWrite(true));
+    try {
+      WithOptions service = retrofit.create(WithOptions.class);
+      ResponseBody body = service.get(new CallOptions().setResponseBodyFile(asyncFile)).execute().body();
+      ctx.assertEquals(0L, body.contentLength());
+      ctx.assertEquals(content, new String(Files.readAllBytes(file.toPath())));
+    } finally {
+      asyncFile.close();
+    }
+  }
+
+  @Test
+  public void testResponseBodyFileNotCoalesced(TestContext ctx) throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    startHttpServer(req -> {
+      requests.incrementAndGet();
+      vertx.setTimer(100, id -> req.response().end("the-body"));
+    });
+    WithOptions service = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions().setCoalescing(true)))
+      .build()
+      .create(WithOptions.class);
+    int num = 2;
+    List<File> files = new ArrayList<>();
+    List<AsyncFile> asyncFiles = new ArrayList<>();
+    for (int i = 0;i < num;i++) {
+      File file = File.createTempFile("retrofit-vertx", ".txt");
+      file.deleteOnExit();
+      files.add(file);
+      asyncFiles.add(vertx.fileSystem().openBlocking(file.getAbsolutePath(), new OpenOptions().setWrite(true)));
+    }
+    try {
+      Async async = ctx.async(num);
+      vertx.runOnContext(v -> {
+        for (AsyncFile asyncFile : asyncFiles) {
+          service.get(new CallOptions().setResponseBodyFile(asyncFile)).enqueue(new retrofit2.Callback<ResponseBody>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+              async.countDown();
+            }
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable t) {
+              ctx.fail(t);
+            }
+          });
+        }
+      });
+      async.awaitSuccess(10000);
+      // Each call wrote its own file
+      ctx.assertEquals(num, requests.get());
+      for (File file : files) {
+        ctx.assertEquals("the-body", new String(Files.readAllBytes(file.toPath())));
+      }
+    } finally {
+      asyncFiles.forEach(AsyncFile::close);
+    }
+  }
+
+  @Test
+  public void testResponseBodyFileNotHedged(TestContext ctx) throws Exception {
+    int warmUp = 20;
+    AtomicInteger requests = new AtomicInteger();
+    startHttpServer(req -> {
+      if (requests.incrementAndGet() <= warmUp) {
+        req.response().end("the-body");
+      } else {
+        vertx.setTimer(300, id -> req.response().end("the-slow-body"));
+      }
+    });
+    WithOptions service = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+        .setRetryPolicy(new RetryPolicy().setHedging(true).setHedgingMinDelay(50))))
+      .build()
+      .create(WithOptions.class);
+    for (int i = 0;i < warmUp;i++) {
+      ctx.assertEquals("the-body", service.get(new CallOptions()).execute().body().string());
+    }
+    File file = File.createTempFile("retrofit-vertx", ".txt");
+    file.deleteOnExit();
+    AsyncFile asyncFile = vertx.fileSystem().openBlocking(file.getAbsolutePath(), new OpenOptions().setWrite(true));
+    try {
+      service.get(new CallOptions().setResponseBodyFile(asyncFile)).execute();
+      ctx.assertEquals("the-slow-body", new String(Files.readAllBytes(file.toPath())));
+      ctx.assertEquals(warmUp + 1, requests.get());
+    } finally {
+      asyncFile.close();
+    }
+  }
+
+  @Test
+  public void testInterceptors(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+      ctx.assertEquals("Bearer the-token", req.getHeader("Authorization"));
+      ctx.assertEquals("okhttp", req.getHeader("X-Interceptor"));
+      ctx.assertEquals("network", req.getHeader("X-Network-Interceptor"));
+      req.response().end("the-body");
+    });
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+    Retrofit intercepted = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+        .addInterceptor((chain, handler) -> {
+          events.add("application");
+          // Proceed asynchronously, e.g after a token was obtained
+          CompletableFuture.runAsync(() -> chain.proceed(chain.request().newBuilder().header("Authorization", "Bearer the-token").build(), ar -> {
+            ctx.assertTrue(Context.isOnEventLoopThread());
+            handler.handle(ar.map(response -> response.newBuilder().header("X-Intercepted", "true").build()));
+          }));
+        })
+        .addInterceptor(chain -> {
+          events.add("okhttp");
+          return chain.proceed(chain.request().newBuilder().header("X-Interceptor", "okhttp").build());
+        })
+        .addNetworkInterceptor((chain, handler) -> {
+          events.add("network");
+          chain.proceed(chain.request().newBuilder().header("X-Network-Interceptor", "network").build(), handler);
+        })))
+      .build();
+    Response<ResponseBody> response = intercepted.create(Cached.class).get().execute();
+    ctx.assertEquals("true", response.headers().get("X-Intercepted"));
+    ctx.assertEquals("the-body", response.body().string());
+    ctx.assertEquals(Arrays.asList("application", "okhttp", "network"), events);
+  }
+
+  @Test
+  public void testOkHttpInterceptorTimeouts(TestContext ctx) throws Exception {
+    startHttpServer(req -> {
+      // Never respond
+    });
+    AtomicInteger executions = new AtomicInteger();
+    ExecutorService executor = Executors.newCachedThreadPool();
+    List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+    Retrofit intercepted = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+        .setBlockingExecutor(task -> {
+          executions.incrementAndGet();
+          executor.execute(task);
+        })
+        .addInterceptor(chain -> {
+          threads.add(Thread.currentThread());
+          return chain.withConnectTimeout(1, TimeUnit.SECONDS).proceed(chain.request());
+        })
+        .addInterceptor(chain -> {
+          threads.add(Thread.currentThread());
+          Interceptor.Chain timeouts = chain.withReadTimeout(100, TimeUnit.MILLISECONDS);
+          ctx.assertEquals(1000, timeouts.connectTimeoutMillis());
+          ctx.assertEquals(100, timeouts.readTimeoutMillis());
+          return timeouts.proceed(chain.request());
+        })))
+      .build();
+    try {
+      long now = System.currentTimeMillis();
+      try {
+        intercepted.create(Cached.class).get().execute();
+        ctx.fail();
+      } catch (SocketTimeoutException e) {
+        ctx.assertTrue(System.currentTimeMillis() - now < 5000);
+      }
+      // The interceptors run on the blocking executor, the second one on the thread of the first one
+      ctx.assertEquals(1, executions.get());
+      ctx.assertEquals(2, threads.size());
+      ctx.assertEquals(threads.get(0), threads.get(1));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testCallbackFailureReported(TestContext ctx) throws Exception {
+    startHttpServer(req -> req.response().end("the-body"));
+    Async async = ctx.async();
+    IOException failure = new IOException("the-failure");
+    Context context = vertx.getOrCreateContext();
+    context.exceptionHandler(err -> {
+      ctx.assertEquals(failure, err);
+      async.complete();
+    });
+    VertxCallFactory factory = new VertxCallFactory(vertx, client);
+    context.runOnContext(v -> factory
+      .newCall(new okhttp3.Request.Builder().url(API_URL).build())
+      .enqueue(new okhttp3.Callback() {
+        @Override
+        public void onFailure(okhttp3.Call call, IOException e) {
+          ctx.fail(e);
+        }
+        @Override
+        public void onResponse(okhttp3.Call call, okhttp3.Response response) throws IOException {
+          response.close();
+          throw failure;
+        }
+      }));
+  }
+
+  @Test
+  public void testInterceptorResponds(TestContext ctx) throws Exception {
+    startHttpServer(req -> ctx.fail());
+    DefaultCallMetrics metrics = new DefaultCallMetrics();
+    Retrofit intercepted = retrofit.newBuilder()
+      .callFactory(new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+        .setMetrics(metrics)
+        .addInterceptor((chain, handler) -> handler.handle(Future.succeededFuture(new okhttp3.Response.Builder()
+          .request(chain.request())
+          .protocol(Protocol.HTTP_1_1)
+          .code(200)
+          .message("OK")
+          .body(ResponseBody.create(MediaType.parse("text/plain"), "the-mock"))
+          .build())))))
+      .build();
+    ctx.assertEquals("the-mock", intercepted.create(Cached.class).get().execute().body().string());
+    DefaultCallMetrics.Endpoint endpoint = metrics.endpoint(Cached.class.getMethod("get"));
+    ctx.assertEquals(1L, endpoint.responses(2));
+    ctx.assertEquals(0L, endpoint.inFlight());
+  }
+
+  @Test
+  public void testWarmUp(TestContext ctx) throws Exception {
+    Set<HttpConnection> connections = Collections.synchronizedSet(new HashSet<>());
+    startHttpServer(req -> {
+      connections.add(req.connection());
+      if (req.method() == HttpMethod.HEAD) {
+        // Let the warm-up requests be concurrent
+        vertx.setTimer(100, id -> req.response().setStatusCode(404).end());
+      } else {
+        req.response().end("the-body");
+      }
+    });
+    VertxCallFactory factory = new VertxCallFactory(vertx, client);
+    CompletableFuture<Void> ready = new CompletableFuture<>();
+    factory.warmUp(Arrays.asList("http://localhost:8080/api/", "http://localhost:8080/other/"), 3, ar -> {
+      if (ar.succeeded()) {
+        ready.complete(null);
+      } else {
+        ready.completeExceptionally(ar.cause());
+      }
+    });
+    ready.get(10, TimeUnit.SECONDS);
+    ctx.assertEquals(3, connections.size());
+    Retrofit warm = retrofit.newBuilder().callFactory(factory).build();
+    ctx.assertEquals("the-body", warm.create(Cached.class).get().execute().body().string());
+    ctx.assertEquals(3, connections.size());
+    factory.warmUp(Collections.singletonList("http://localhost:8081/"), 1, ctx.asyncAssertFailure());
+  }
+
+  @Test
+  public void testRateLimit(TestContext ctx) throws Exception {
+    startHttpServer(req -> req.response().end("the-body"));
+    VertxCallFactory factory = new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+      .setRateLimit(new RateLimitOptions().setRate(10).setBurst(1).setMaxQueueSize(3)));
+    Cached service = retrofit.newBuilder().callFactory(factory).build().create(Cached.class);
+    long now = System.currentTimeMillis();
+    CompletableFuture<List<CompletableFuture<String>>> sent = new CompletableFuture<>();
+    vertx.runOnContext(v -> {
+      // The calls acquire their token in order on the context
+      List<CompletableFuture<String>> bodies = new ArrayList<>();
+      for (int i = 0;i < 5;i++) {
+        bodies.add(body(service.get()));
+      }
+      sent.complete(bodies);
+    });
+    List<CompletableFuture<String>> bodies = sent.get(10, TimeUnit.SECONDS);
+    for (int i = 0;i < 4;i++) {
+      ctx.assertEquals("the-body", bodies.get(i).get(10, TimeUnit.SECONDS));
+    }
+    try {
+      bodies.get(4).get(10, TimeUnit.SECONDS);
+      ctx.fail();
+    } catch (ExecutionException e) {
+      ctx.assertTrue(e.getCause() instanceof RateLimitException);
+    }
+    long elapsed = System.currentTimeMillis() - now;
+    ctx.assertTrue(elapsed >= 250, "Unexpected elapsed time " + elapsed);
+    RateLimiter limiter = factory.rateLimiters().get("localhost:8080");
+    ctx.assertEquals(1L, limiter.getRejectedCount());
+    ctx.assertEquals(4L, limiter.waitTimes().getCount());
+    ctx.assertEquals(0, limiter.getQueueSize());
+  }
+
+  @Test
+  public void testRateLimitCancel(TestContext ctx) throws Exception {
+    startHttpServer(req -> req.response().end("the-body"));
+    VertxCallFactory factory = new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+      .setRateLimit(new RateLimitOptions().setRate(2).setBurst(1).setMaxQueueSize(1)));
+    Cached service = retrofit.newBuilder().callFactory(factory).build().create(Cached.class);
+    ctx.assertEquals("the-body", service.get().execute().body().string());
+    RateLimiter limiter = factory.rateLimiters().get("localhost:8080");
+    Call<ResponseBody> call = service.get();
+    CompletableFuture<String> cancelled = body(call);
+    waitUntil(ctx, () -> limiter.getQueueSize() == 1);
+    call.cancel();
+    try {
+      cancelled.get(10, TimeUnit.SECONDS);
+      ctx.fail();
+    } catch (ExecutionException expected) {
+    }
+    // The cancelled call left the queue, another call can wait
+    ctx.assertEquals(0, limiter.getQueueSize());
+    ctx.assertEquals("the-body", service.get().execute().body().string());
+    ctx.assertEquals(0L, limiter.getRejectedCount());
+  }
+
+  @Test
+  public void testRateLimitRetryAfter(TestContext ctx) throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    startHttpServer(req -> {
+      if (requests.getAndIncrement() == 0) {
+        req.response().setStatusCode(429).putHeader("Retry-After", "1").end();
+      } else {
+        req.response().putHeader("X-RateLimit-Remaining", "0").putHeader("X-RateLimit-Reset", "60").end("the-body");
+      }
+    });
+    VertxCallFactory factory = new VertxCallFactory(vertx, client, new VertxCallFactoryOptions()
+      .setRateLimit(new RateLimitOptions().setMaxWait(5000)));
+    Cached service = retrofit.newBuilder().callFactory(factory).build().create(Cached.class);
+    ctx.assertEquals(429, service.get().execute().code());
+    long now = System.currentTimeMillis();
+    ctx.assertEquals("the-body", service.get().execute().body().string());
+    long elapsed = System.currentTimeMillis() - now;
+    ctx.assertTrue(elapsed >= 900, "Unexpected elapsed time " + elapsed);
+    // The upstream limit is reset in 60 seconds
+    try {
+      service.get().execute();
+      ctx.fail();
+    } catch (RateLimitException ignore) {
+    }
+  }
+
+  private static CompletableFuture<String> body(Call<ResponseBody> call) {
+    CompletableFuture<String> result = new CompletableFuture<>();
+    call.enqueue(new retrofit2.Callback<ResponseBody>() {
+      @Override
+      public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+        try {
+          result.complete(response.body().string());
+        } catch (IOException e) {
+          result.completeExceptionally(e);
+        }
+      }
+      @Override
+      public void onFailure(Call<ResponseBody> call, Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    return result;
+  }
+
+  private static void waitUntil(TestContext ctx, java.util.function.BooleanSupplier condition) throws InterruptedException {
+    long now = System.currentTimeMillis();
+    while (!condition.getAsBoolean()) {
+      ctx.assertTrue(System.currentTimeMillis() - now < 10000);
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testHistogram(TestContext ctx) {
+    Histogram histogram = new Histogram();
+    for (int i = 1;i <= 10000;i++) {
+      histogram.record(i * 1000L);
+    }
+    ctx.assertEquals(10000L, histogram.getCount());
+    ctx.assertEquals(10000000L, histogram.getMax());
+    long median = histogram.getValueAtPercentile(50);
+    ctx.assertTrue(Math.abs(median - 5000000L) < 5000000L * 0.04, "Unexpected median " + median);
+    long p99 = histogram.getValueAtPercentile(99);
+    ctx.assertTrue(Math.abs(p99 - 9900000L) < 9900000L * 0.04, "Unexpected p99 " + p99);
+  }
+
   private void startHttpServer() throws Exception {
     startHttpServer(req -> {
       switch (req.path()) {